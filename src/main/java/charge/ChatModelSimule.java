@@ -0,0 +1,67 @@
+package charge;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+
+import java.util.List;
+
+/**
+ * ChatLanguageModel local qui remplace Gemini pendant les tests de charge.
+ * Il attend une latence tirée de la distribution configurée, puis répond
+ * de façon plausible selon le type d'appel :
+ * <ul>
+ *     <li>routage du test 3 (LanguageModelQueryRouter) : "1"</li>
+ *     <li>routage du test 4 (oui/non/peut-être) : "oui"</li>
+ *     <li>résumé de la mémoire (MemoireTokens) : un résumé fixe</li>
+ *     <li>génération : une réponse fixe</li>
+ * </ul>
+ */
+public class ChatModelSimule implements ChatLanguageModel {
+
+    private final DistributionLatence latenceRoutage;
+    private final DistributionLatence latenceGeneration;
+    private final MesuresEtapes mesures;
+
+    public ChatModelSimule(DistributionLatence latenceRoutage, DistributionLatence latenceGeneration,
+                           MesuresEtapes mesures) {
+        this.latenceRoutage = latenceRoutage;
+        this.latenceGeneration = latenceGeneration;
+        this.mesures = mesures;
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages) {
+        String texte = dernierTexteUtilisateur(messages);
+
+        if (texte.contains("Réponds seulement par 'oui'")) {
+            return repondre("routage", latenceRoutage, "oui");
+        }
+        if (texte.contains("single number or multiple numbers")) {
+            return repondre("routage", latenceRoutage, "1");
+        }
+        if (texte.startsWith("Résume la conversation suivante")) {
+            return repondre("resume", latenceGeneration, "Résumé simulé des échanges précédents.");
+        }
+        return repondre("generation", latenceGeneration,
+                "Réponse simulée (" + messages.size() + " messages, " + texte.length() + " caractères).");
+    }
+
+    private Response<AiMessage> repondre(String etape, DistributionLatence latence, String reponse) {
+        long debut = System.nanoTime();
+        latence.attendre();
+        mesures.enregistrer(etape, System.nanoTime() - debut);
+        return Response.from(AiMessage.from(reponse));
+    }
+
+    private static String dernierTexteUtilisateur(List<ChatMessage> messages) {
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            if (messages.get(i) instanceof UserMessage userMessage) {
+                return userMessage.singleText();
+            }
+        }
+        return "";
+    }
+}
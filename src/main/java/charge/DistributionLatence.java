@@ -0,0 +1,88 @@
+package charge;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Distribution de latence utilisée par les composants simulés.
+ * Format texte accepté par {@link #parse(String)} :
+ * <ul>
+ *     <li>{@code constante:500}</li>
+ *     <li>{@code uniforme:200:800}</li>
+ *     <li>{@code lognormale:800:0.5} (médiane en ms, écart-type du logarithme)</li>
+ * </ul>
+ */
+public abstract class DistributionLatence {
+
+    /**
+     * @return Une latence tirée de la distribution, en millisecondes
+     */
+    public abstract long tirerMillis();
+
+    public static DistributionLatence constante(long millis) {
+        return new DistributionLatence() {
+            @Override
+            public long tirerMillis() {
+                return millis;
+            }
+
+            @Override
+            public String toString() {
+                return "constante:" + millis;
+            }
+        };
+    }
+
+    public static DistributionLatence uniforme(long minMillis, long maxMillis) {
+        return new DistributionLatence() {
+            @Override
+            public long tirerMillis() {
+                return ThreadLocalRandom.current().nextLong(minMillis, maxMillis + 1);
+            }
+
+            @Override
+            public String toString() {
+                return "uniforme:" + minMillis + ":" + maxMillis;
+            }
+        };
+    }
+
+    public static DistributionLatence logNormale(double medianeMillis, double sigma) {
+        double mu = Math.log(medianeMillis);
+        return new DistributionLatence() {
+            @Override
+            public long tirerMillis() {
+                return Math.round(Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian()));
+            }
+
+            @Override
+            public String toString() {
+                return "lognormale:" + medianeMillis + ":" + sigma;
+            }
+        };
+    }
+
+    public static DistributionLatence parse(String texte) {
+        String[] parties = texte.trim().split(":");
+        switch (parties[0].toLowerCase()) {
+            case "constante":
+                return constante(Long.parseLong(parties[1]));
+            case "uniforme":
+                return uniforme(Long.parseLong(parties[1]), Long.parseLong(parties[2]));
+            case "lognormale":
+                return logNormale(Double.parseDouble(parties[1]), Double.parseDouble(parties[2]));
+            default:
+                throw new IllegalArgumentException("Distribution inconnue : " + texte);
+        }
+    }
+
+    /**
+     * Attend pendant une latence tirée de la distribution
+     */
+    void attendre() {
+        try {
+            Thread.sleep(tirerMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package charge;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import moteur.ChatModelLimite;
+import moteur.FichierQuestions;
+import moteur.ModePipeline;
+import moteur.MoteurRag;
+import moteur.RessourcesPartagees;
+import test1.Assistant;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Harnais de charge : rejoue un fichier de questions contre l'un des pipelines
+ * du moteur, avec un Gemini et un moteur Web simulés localement.
+ * Le modèle d'embedding et les index restent réels, ce qui permet de mesurer
+ * le plafond de débit de la recherche, du routage et de la mémoire sans quota.
+ *
+ * Arguments (cle=valeur) :
+ * <ul>
+ *     <li>questions : fichier de questions (obligatoire)</li>
+ *     <li>mode : naif, routage, conditionnel ou web (défaut naif)</li>
+ *     <li>concurrence : nombre d'utilisateurs simultanés (défaut 4)</li>
+ *     <li>debit : arrivées par seconde, loi de Poisson ; 0 = tout envoyer d'un coup (défaut 0)</li>
+ *     <li>repetitions : nombre de passes sur le fichier (défaut 1)</li>
+ *     <li>coalescence : true pour regrouper les questions identiques en cours (défaut false)</li>
+ *     <li>speculatif : false pour attendre la décision de routage avant la recherche (défaut true)</li>
+ *     <li>memoire : fenetre (10 messages) ou tokens (voir MemoireTokens) (défaut fenetre)</li>
+ *     <li>limiteur : true pour placer le modèle simulé derrière un {@link ChatModelLimite} (défaut false)</li>
+ *     <li>latence-routage, latence-generation, latence-web : voir {@link DistributionLatence}</li>
+ * </ul>
+ */
+public class HarnaisCharge {
+
+    private static final int TYPES_ERREURS_AFFICHES = 5;
+    private static final int LONGUEUR_MAX_MESSAGE = 120;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int egal = arg.indexOf('=');
+            if (egal > 0) {
+                options.put(arg.substring(0, egal), arg.substring(egal + 1));
+            }
+        }
+
+        if (!options.containsKey("questions")) {
+            System.err.println("Usage : HarnaisCharge questions=<fichier> [mode=naif] [concurrence=4] [debit=0] " +
+                    "[repetitions=1] [coalescence=false] [speculatif=true] [memoire=fenetre] [limiteur=false] " +
+                    "[latence-routage=...] [latence-generation=...] [latence-web=...]");
+            return;
+        }
+
+        List<String> questions = FichierQuestions.lire(Paths.get(options.get("questions")));
+        ModePipeline mode = ModePipeline.depuisNom(options.getOrDefault("mode", "naif"));
+        int concurrence = Integer.parseInt(options.getOrDefault("concurrence", "4"));
+        double debit = Double.parseDouble(options.getOrDefault("debit", "0"));
+        int repetitions = Integer.parseInt(options.getOrDefault("repetitions", "1"));
+        boolean coalescence = Boolean.parseBoolean(options.getOrDefault("coalescence", "false"));
+        boolean speculatif = Boolean.parseBoolean(options.getOrDefault("speculatif", "true"));
+        boolean limiteur = Boolean.parseBoolean(options.getOrDefault("limiteur", "false"));
+        boolean memoireTokens = options.getOrDefault("memoire", "fenetre").equalsIgnoreCase("tokens");
+
+        MesuresEtapes mesures = new MesuresEtapes();
+        ChatModelSimule chatModelSimule = new ChatModelSimule(
+                DistributionLatence.parse(options.getOrDefault("latence-routage", "lognormale:300:0.4")),
+                DistributionLatence.parse(options.getOrDefault("latence-generation", "lognormale:1200:0.5")),
+                mesures);
+        ChatModelLimite chatModelLimite = limiteur ? ChatModelLimite.builder(chatModelSimule).build() : null;
+        ChatLanguageModel chatModel = limiteur ? chatModelLimite : chatModelSimule;
+        WebSearchEngineSimule webSearchEngine = new WebSearchEngineSimule(
+                DistributionLatence.parse(options.getOrDefault("latence-web", "lognormale:600:0.5")),
+                mesures);
+
+        // Les retrievers sont chronométrés pour isoler le coût de la recherche locale
+        RessourcesPartagees ressources = new RessourcesPartagees() {
+            @Override
+            public ContentRetriever contentRetriever(Path documentPath) {
+                ContentRetriever retriever = super.contentRetriever(documentPath);
+                return query -> mesures.chronometrer("recherche", () -> retriever.retrieve(query));
+            }
+        };
+        MoteurRag moteur = new MoteurRag(ressources, chatModel, webSearchEngine, speculatif);
+
+        // Préchauffage : ingestion et construction du pipeline hors mesure
+        moteur.retrievalAugmentor(mode);
+
+        // Chaque thread joue un utilisateur avec sa propre conversation
+        ThreadLocal<Assistant> assistants = ThreadLocal.withInitial(() -> {
+            ChatMemory chatMemory = new MemoireChronometree(memoireTokens
+                    ? moteur.nouvelleMemoire()
+                    : MessageWindowChatMemory.withMaxMessages(10), mesures);
+            return coalescence ? moteur.nouvelleSession(mode, chatMemory) : moteur.nouvelAssistant(mode, chatMemory);
+        });
+
+        int total = questions.size() * repetitions;
+        AtomicInteger erreurs = new AtomicInteger();
+        Map<String, AtomicInteger> erreursParType = new ConcurrentHashMap<>();
+        ExecutorService pool = Executors.newFixedThreadPool(concurrence);
+
+        System.out.printf("Rejeu de %d questions en mode %s, concurrence %d, débit %s%n",
+                total, mode.nom(), concurrence, debit > 0 ? debit + " req/s" : "maximal");
+
+        long debut = System.nanoTime();
+        for (int i = 0; i < total; i++) {
+            String question = questions.get(i % questions.size());
+            long arrivee = System.nanoTime();
+            pool.submit(() -> {
+                mesures.enregistrer("attente", System.nanoTime() - arrivee);
+                long debutRequete = System.nanoTime();
+                try {
+                    assistants.get().chat(question);
+                } catch (Exception e) {
+                    erreurs.incrementAndGet();
+                    erreursParType.computeIfAbsent(description(e), d -> new AtomicInteger()).incrementAndGet();
+                } finally {
+                    mesures.enregistrer("requete", System.nanoTime() - debutRequete);
+                    mesures.enregistrer("total", System.nanoTime() - arrivee);
+                }
+            });
+
+            if (debit > 0) {
+                // Arrivées de Poisson : intervalles exponentiels de moyenne 1/debit
+                double intervalle = -Math.log(1 - ThreadLocalRandom.current().nextDouble()) / debit;
+                TimeUnit.NANOSECONDS.sleep((long) (intervalle * 1e9));
+            }
+        }
+
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.DAYS);
+        double secondes = (System.nanoTime() - debut) / 1e9;
+
+        System.out.println("\n=== Résultats ===");
+        int reussies = total - erreurs.get();
+        System.out.printf("Requêtes : %d (%d erreurs) en %.1f s%n", total, erreurs.get(), secondes);
+        System.out.printf("Débit : %.2f req/s réussies%n", reussies / secondes);
+        if (!erreursParType.isEmpty()) {
+            System.out.printf("Erreurs (%d types) :%n", erreursParType.size());
+            erreursParType.entrySet().stream()
+                    .sorted((a, b) -> Integer.compare(b.getValue().get(), a.getValue().get()))
+                    .limit(TYPES_ERREURS_AFFICHES)
+                    .forEach(erreur -> System.out.printf("  %6d x %s%n", erreur.getValue().get(), erreur.getKey()));
+            if (erreursParType.size() > TYPES_ERREURS_AFFICHES) {
+                System.out.printf("  ... et %d autres types%n", erreursParType.size() - TYPES_ERREURS_AFFICHES);
+            }
+        }
+        if (coalescence) {
+            System.out.printf("Coalescence : %d exécutions, %d réponses partagées%n",
+                    moteur.coalesceur().executions(), moteur.coalesceur().partages());
+        }
+        if (limiteur) {
+            System.out.println("Limiteur : " + chatModelLimite.metriques());
+        }
+        System.out.println();
+        System.out.print(mesures.rapport());
+    }
+
+    /**
+     * Type et message d'une erreur, message tronqué, pour regrouper les erreurs identiques
+     */
+    private static String description(Exception e) {
+        String message = String.valueOf(e.getMessage()).replaceAll("\\s+", " ");
+        if (message.length() > LONGUEUR_MAX_MESSAGE) {
+            message = message.substring(0, LONGUEUR_MAX_MESSAGE) + "...";
+        }
+        return e.getClass().getSimpleName() + " : " + message;
+    }
+
+    /**
+     * ChatMemory qui chronomètre la lecture et l'écriture de la mémoire
+     */
+    private static class MemoireChronometree implements ChatMemory {
+
+        private final ChatMemory delegate;
+        private final MesuresEtapes mesures;
+
+        MemoireChronometree(ChatMemory delegate, MesuresEtapes mesures) {
+            this.delegate = delegate;
+            this.mesures = mesures;
+        }
+
+        @Override
+        public Object id() {
+            return delegate.id();
+        }
+
+        @Override
+        public void add(ChatMessage message) {
+            long debut = System.nanoTime();
+            delegate.add(message);
+            mesures.enregistrer("memoire", System.nanoTime() - debut);
+        }
+
+        @Override
+        public List<ChatMessage> messages() {
+            return mesures.chronometrer("memoire", delegate::messages);
+        }
+
+        @Override
+        public void clear() {
+            delegate.clear();
+        }
+    }
+}
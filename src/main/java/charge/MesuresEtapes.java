@@ -0,0 +1,56 @@
+package charge;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+
+/**
+ * Collecte des durées par étape du pipeline (attente, routage, recherche, génération...)
+ * et calcul des percentiles de latence.
+ */
+public class MesuresEtapes {
+
+    private final Map<String, ConcurrentLinkedQueue<Long>> durees = new ConcurrentHashMap<>();
+
+    public void enregistrer(String etape, long dureeNanos) {
+        durees.computeIfAbsent(etape, e -> new ConcurrentLinkedQueue<>()).add(dureeNanos);
+    }
+
+    /**
+     * Exécute une action en enregistrant sa durée sous le nom de l'étape
+     */
+    public <T> T chronometrer(String etape, Supplier<T> action) {
+        long debut = System.nanoTime();
+        try {
+            return action.get();
+        } finally {
+            enregistrer(etape, System.nanoTime() - debut);
+        }
+    }
+
+    /**
+     * Affiche, pour chaque étape, le nombre d'appels et les percentiles en millisecondes
+     */
+    public String rapport() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-14s %8s %10s %10s %10s %10s %10s%n",
+                "étape", "appels", "moy (ms)", "p50", "p90", "p99", "max"));
+        durees.keySet().stream().sorted().forEach(etape -> {
+            long[] valeurs = durees.get(etape).stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(valeurs);
+            double moyenne = Arrays.stream(valeurs).average().orElse(0);
+            sb.append(String.format("%-14s %8d %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                    etape, valeurs.length, moyenne / 1e6,
+                    percentile(valeurs, 50) / 1e6, percentile(valeurs, 90) / 1e6,
+                    percentile(valeurs, 99) / 1e6, valeurs[valeurs.length - 1] / 1e6));
+        });
+        return sb.toString();
+    }
+
+    private static long percentile(long[] valeursTriees, double p) {
+        int rang = (int) Math.ceil(p / 100.0 * valeursTriees.length) - 1;
+        return valeursTriees[Math.max(0, Math.min(rang, valeursTriees.length - 1))];
+    }
+}
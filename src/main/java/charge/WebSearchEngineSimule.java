@@ -0,0 +1,46 @@
+package charge;
+
+import dev.langchain4j.web.search.WebSearchEngine;
+import dev.langchain4j.web.search.WebSearchInformationResult;
+import dev.langchain4j.web.search.WebSearchOrganicResult;
+import dev.langchain4j.web.search.WebSearchRequest;
+import dev.langchain4j.web.search.WebSearchResults;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * WebSearchEngine local qui remplace Tavily pendant les tests de charge :
+ * attend une latence simulée puis renvoie des résultats factices.
+ */
+public class WebSearchEngineSimule implements WebSearchEngine {
+
+    private static final int NOMBRE_RESULTATS = 3;
+
+    private final DistributionLatence latence;
+    private final MesuresEtapes mesures;
+
+    public WebSearchEngineSimule(DistributionLatence latence, MesuresEtapes mesures) {
+        this.latence = latence;
+        this.mesures = mesures;
+    }
+
+    @Override
+    public WebSearchResults search(WebSearchRequest webSearchRequest) {
+        long debut = System.nanoTime();
+        latence.attendre();
+
+        List<WebSearchOrganicResult> resultats = new ArrayList<>();
+        for (int i = 1; i <= NOMBRE_RESULTATS; i++) {
+            resultats.add(WebSearchOrganicResult.from(
+                    "Résultat simulé " + i,
+                    URI.create("https://example.com/resultat-" + i),
+                    "Extrait simulé pour : " + webSearchRequest.searchTerms(),
+                    null));
+        }
+
+        mesures.enregistrer("recherche-web", System.nanoTime() - debut);
+        return WebSearchResults.from(WebSearchInformationResult.from((long) NOMBRE_RESULTATS), resultats);
+    }
+}
@@ -0,0 +1,94 @@
+package moteur;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import test1.Assistant;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.HexFormat;
+import java.util.Locale;
+
+/**
+ * Assistant d'une session qui partage ses exécutions avec les autres sessions
+ * via un {@link CoalesceurRequetes}.
+ * Deux questions sont regroupées si elles sont identiques une fois normalisées,
+ * posées au même pipeline et dans une conversation équivalente : mêmes messages en mémoire,
+ * y compris une question restée sans réponse après une erreur du modèle.
+ * Une session qui reçoit un résultat partagé enregistre l'échange dans sa propre mémoire.
+ */
+public class AssistantCoalescent implements Assistant {
+
+    private final CoalesceurRequetes coalesceur;
+    private final String pipeline;
+    private final Assistant delegate;
+    private final ChatMemory chatMemory;
+
+    /**
+     * @param coalesceur Coalesceur partagé entre les sessions
+     * @param pipeline Identifiant du pipeline, inclus dans la clé
+     * @param delegate Assistant de la session, construit sur chatMemory
+     * @param chatMemory Mémoire de la session
+     */
+    public AssistantCoalescent(CoalesceurRequetes coalesceur, String pipeline, Assistant delegate, ChatMemory chatMemory) {
+        this.coalesceur = coalesceur;
+        this.pipeline = pipeline;
+        this.delegate = delegate;
+        this.chatMemory = chatMemory;
+    }
+
+    @Override
+    public synchronized String chat(String userMessage) {
+        String question = normaliser(userMessage);
+        String cle = pipeline + "|" + empreinteHistorique() + "|" + question;
+
+        boolean[] execute = new boolean[1];
+        String reponse = coalesceur.executer(cle, () -> {
+            execute[0] = true;
+            return delegate.chat(userMessage);
+        });
+
+        if (!execute[0]) {
+            // Résultat partagé : la mémoire de la session n'a pas vu passer l'échange
+            chatMemory.add(UserMessage.from(userMessage));
+            chatMemory.add(AiMessage.from(reponse));
+        }
+        return reponse;
+    }
+
+    /**
+     * Normalise une question : minuscules, espaces réduits, ponctuation finale retirée
+     */
+    static String normaliser(String question) {
+        String texte = Normalizer.normalize(question, Normalizer.Form.NFC)
+                .toLowerCase(Locale.ROOT)
+                .replaceAll("\\s+", " ")
+                .trim();
+        return texte.replaceAll("[\\s?!.]+$", "");
+    }
+
+    /**
+     * Empreinte des messages en mémoire, tels qu'ils seront envoyés au modèle.
+     * Calculée sur la mémoire plutôt que sur les échanges réussis : une question restée sans réponse
+     * ou des messages évincés par la fenêtre de la mémoire changent bien la conversation.
+     */
+    private String empreinteHistorique() {
+        MessageDigest empreinte;
+        try {
+            empreinte = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (ChatMessage message : chatMemory.messages()) {
+            empreinte.update(message.type().name().getBytes(StandardCharsets.UTF_8));
+            empreinte.update((byte) 0);
+            empreinte.update(MemoireTokens.texte(message).getBytes(StandardCharsets.UTF_8));
+            empreinte.update((byte) 0);
+        }
+        return HexFormat.of().formatHex(empreinte.digest());
+    }
+}
@@ -0,0 +1,538 @@
+package moteur;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.exception.HttpException;
+import dev.langchain4j.exception.RateLimitException;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Décorateur de ChatLanguageModel qui limite le nombre d'appels simultanés au modèle.
+ * La limite s'adapte selon le gradient de latence :
+ * <ul>
+ *     <li>pour chaque type d'appel (routage, génération, résumé...), une latence courte
+ *     (moyenne mobile sur une vingtaine d'appels) est comparée à une latence de référence,
+ *     le plus bas niveau atteint par cette moyenne (voir {@link Latences}) ;</li>
+ *     <li>tant que la latence courte reste sous la référence multipliée par la tolérance,
+ *     la limite augmente de 1/limite par appel, soit d'environ 1 par vague d'appels ;</li>
+ *     <li>au-delà, la limite est multipliée par le gradient (référence x tolérance / latence courte,
+ *     au moins 0,5), mais seulement si le nombre d'appels en cours (lissé) dépasse la plus forte
+ *     charge déjà supportée sans hausse de latence : si la charge n'a pas augmenté, c'est plutôt
+ *     le modèle qui ralentit, et une sonde est lancée au lieu de réduire la limite ;</li>
+ *     <li>une sonde divise la limite par deux pendant une courte fenêtre. Si la latence redescend,
+ *     la surcharge venait de nos appels ; si elle reste haute, le ralentissement du modèle est
+ *     confirmé, la référence est réancrée sur la latence actuelle et la limite d'avant la sonde
+ *     est rétablie d'un coup ;</li>
+ *     <li>sur une erreur de quota (HTTP 429), la limite est divisée par deux.</li>
+ * </ul>
+ * Une diminution n'est appliquée qu'une fois par fenêtre (la latence courte du type concerné) :
+ * une rafale de réponses lentes ou d'erreurs 429 issues de la même surcharge ne compte qu'une fois.
+ * De même, des sondes simultanées de plusieurs types ne divisent la limite qu'une fois.
+ *
+ * Les appels au-delà de la limite attendent dans une file bornée, pendant une durée bornée.
+ * Quand la file est pleine ou l'attente trop longue, l'appel est délesté : il passe au modèle
+ * de repli s'il y en a un, sinon une {@link SurchargeException} est levée.
+ */
+public class ChatModelLimite implements ChatLanguageModel {
+
+    public static final String TYPE_DEFAUT = "defaut";
+    public static final String TYPE_ROUTAGE = "routage";
+    public static final String TYPE_GENERATION = "generation";
+    public static final String TYPE_RESUME = "resume";
+
+    private static final double POIDS_LATENCE_COURTE = 0.05;
+    private static final double POIDS_EN_COURS = 0.05;
+    private static final int APPELS_FENETRE_REFERENCE = 200;
+    private static final long DUREE_FENETRE_REFERENCE_NANOS = Duration.ofSeconds(30).toNanos();
+    private static final int APPELS_FENETRE_SONDE = 50;
+    private static final long DUREE_FENETRE_SONDE_NANOS = Duration.ofSeconds(10).toNanos();
+    private static final double SEUIL_SONDE = 1.5;
+    private static final double DIMINUTION_SONDE = 0.5;
+    private static final double GRADIENT_MIN = 0.5;
+    /** Sans hausse de charge, gradient en dessous duquel la sonde est lancée sans attendre la fin de fenêtre */
+    private static final double GRADIENT_SONDE_ANTICIPEE = 0.9;
+    private static final double MARGE_CHARGE = 1.1;
+    private static final double DIMINUTION_QUOTA = 0.5;
+
+    private final ChatLanguageModel delegate;
+    private final ChatLanguageModel repli;
+    private final double limiteMin;
+    private final double limiteMax;
+    private final double toleranceLatence;
+    private final int tailleFileMax;
+    private final long attenteMaxNanos;
+
+    private final ReentrantLock verrou = new ReentrantLock(true);
+    private final Condition placeLibre = verrou.newCondition();
+    private final Map<String, Latences> latencesParType = new HashMap<>();
+    private double limite;
+    private int enCours;
+    private int enAttente;
+    private long prochaineDiminutionNanos = Long.MIN_VALUE;
+    private double enCoursLisse;
+    /** Limite juste avant la dernière sonde, rétablie si la sonde confirme un ralentissement du modèle */
+    private double limiteAvantSonde;
+    private long finSondeNanos = Long.MIN_VALUE;
+
+    private final AtomicLong delestages = new AtomicLong();
+    private final AtomicLong erreursQuota = new AtomicLong();
+
+    private ChatModelLimite(Builder builder) {
+        this.delegate = builder.delegate;
+        this.repli = builder.repli;
+        this.limiteMin = builder.limiteMin;
+        this.limiteMax = builder.limiteMax;
+        this.toleranceLatence = builder.toleranceLatence;
+        this.tailleFileMax = builder.tailleFileMax;
+        this.attenteMaxNanos = builder.attenteMax.toNanos();
+        this.limite = builder.limiteInitiale;
+    }
+
+    public static Builder builder(ChatLanguageModel delegate) {
+        return new Builder(delegate);
+    }
+
+    /**
+     * Vue de ce modèle pour un type d'appel : la limite de concurrence reste commune,
+     * mais la latence de référence est propre au type. Un routage de quelques tokens
+     * n'est ainsi pas comparé à une génération complète.
+     *
+     * @param type Type d'appel, par exemple "routage" ou "generation"
+     * @return Modèle à passer aux composants qui font ce type d'appel
+     */
+    public ChatLanguageModel pourType(String type) {
+        return new ChatLanguageModel() {
+            @Override
+            public Response<AiMessage> generate(List<ChatMessage> messages) {
+                return generer(type, messages);
+            }
+        };
+    }
+
+    /**
+     * Vue typée d'un modèle s'il est limité, le modèle lui-même sinon
+     */
+    public static ChatLanguageModel pourType(ChatLanguageModel chatModel, String type) {
+        return chatModel instanceof ChatModelLimite limiteur ? limiteur.pourType(type) : chatModel;
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages) {
+        return generer(TYPE_DEFAUT, messages);
+    }
+
+    private Response<AiMessage> generer(String type, List<ChatMessage> messages) {
+        if (!acquerir()) {
+            delestages.incrementAndGet();
+            if (repli != null) {
+                return repli.generate(messages);
+            }
+            throw new SurchargeException("Modèle surchargé : " + metriques());
+        }
+
+        long debut = System.nanoTime();
+        boolean quotaDepasse = false;
+        try {
+            return delegate.generate(messages);
+        } catch (RuntimeException e) {
+            quotaDepasse = estErreurQuota(e);
+            if (quotaDepasse) {
+                erreursQuota.incrementAndGet();
+            }
+            throw e;
+        } finally {
+            long fin = System.nanoTime();
+            liberer(type, fin - debut, quotaDepasse, fin);
+        }
+    }
+
+    private boolean acquerir() {
+        verrou.lock();
+        try {
+            if (enAttente == 0 && enCours < limiteEntiere()) {
+                enCours++;
+                return true;
+            }
+            if (enAttente >= tailleFileMax) {
+                return false;
+            }
+
+            enAttente++;
+            try {
+                long restant = attenteMaxNanos;
+                while (enCours >= limiteEntiere()) {
+                    if (restant <= 0) {
+                        return false;
+                    }
+                    restant = placeLibre.awaitNanos(restant);
+                }
+                enCours++;
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                enAttente--;
+            }
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    private void liberer(String type, long latenceNanos, boolean quotaDepasse, long maintenantNanos) {
+        verrou.lock();
+        try {
+            ajuster(type, latenceNanos, enCours, quotaDepasse, maintenantNanos);
+            enCours--;
+            placeLibre.signalAll();
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * Loi de contrôle de la limite, appelée à la fin de chaque appel.
+     * Visible dans le paquetage pour être rejouée en temps simulé (voir SimulationLimiteur, sous src/test).
+     *
+     * @param enCoursAppel Nombre d'appels en cours, celui-ci compris, au moment où il se termine
+     */
+    void ajuster(String type, long latenceNanos, int enCoursAppel, boolean quotaDepasse, long maintenantNanos) {
+        verrou.lock();
+        try {
+            enCoursLisse = enCoursLisse == 0 ? enCoursAppel : enCoursLisse + POIDS_EN_COURS * (enCoursAppel - enCoursLisse);
+            Latences latences = latencesParType.computeIfAbsent(type, t -> new Latences());
+
+            if (quotaDepasse) {
+                diminuer(DIMINUTION_QUOTA, latences.fenetreNanos(latenceNanos), maintenantNanos);
+                return;
+            }
+
+            switch (latences.observer(latenceNanos, maintenantNanos)) {
+                case SONDE -> {
+                    sonder(latences, latenceNanos, maintenantNanos);
+                    return;
+                }
+                case CONFIRMATION -> {
+                    // Le modèle a ralenti sans surcharge : la limite d'avant la sonde est rétablie
+                    limite = Math.min(limiteMax, Math.max(limite, limiteAvantSonde));
+                    return;
+                }
+                case INFIRMATION -> {
+                    // La latence est redescendue à charge réduite : c'était bien notre charge
+                    latences.chargeSaine = Math.min(latences.chargeSaine, enCoursLisse);
+                }
+                default -> {
+                }
+            }
+
+            double ratio = latences.courte / latences.reference();
+            if (ratio <= 1 + (toleranceLatence - 1) / 2) {
+                // Charge supportée sans hausse notable de latence
+                latences.chargeSaine = Math.max(latences.chargeSaine, enCoursLisse);
+            }
+
+            double gradient = Math.max(GRADIENT_MIN, Math.min(1.0, toleranceLatence / ratio));
+            if (gradient < 1.0) {
+                if (enCoursLisse > latences.chargeSaine * MARGE_CHARGE) {
+                    diminuer(gradient, latences.fenetreNanos(latenceNanos), maintenantNanos);
+                } else if (gradient < GRADIENT_SONDE_ANTICIPEE && latences.anticiperSonde(maintenantNanos)) {
+                    // La latence monte sans que la charge dépasse un niveau déjà supporté : c'est plutôt
+                    // le modèle qui ralentit. La limite n'est pas réduite sur la latence seule, la sonde tranche.
+                    sonder(latences, latenceNanos, maintenantNanos);
+                }
+            } else {
+                limite = Math.min(limiteMax, limite + 1.0 / limite);
+            }
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * Réduit la charge le temps d'une sonde. Si plusieurs types d'appel sondent en même temps,
+     * la limite n'est divisée qu'une fois.
+     */
+    private void sonder(Latences latences, long latenceNanos, long maintenantNanos) {
+        if (maintenantNanos < finSondeNanos) {
+            return;
+        }
+        limiteAvantSonde = limite;
+        limite = Math.max(limiteMin, limite * DIMINUTION_SONDE);
+        finSondeNanos = maintenantNanos + DUREE_FENETRE_SONDE_NANOS;
+        prochaineDiminutionNanos = maintenantNanos + latences.fenetreNanos(latenceNanos);
+    }
+
+    /**
+     * Applique une diminution, sauf si une autre a déjà eu lieu dans la fenêtre en cours
+     */
+    private void diminuer(double facteur, long fenetreNanos, long maintenantNanos) {
+        if (maintenantNanos < prochaineDiminutionNanos) {
+            return;
+        }
+        limite = Math.max(limiteMin, limite * facteur);
+        prochaineDiminutionNanos = maintenantNanos + fenetreNanos;
+    }
+
+    private int limiteEntiere() {
+        return Math.max(1, (int) limite);
+    }
+
+    /**
+     * Erreur de quota : statut HTTP 429, quelle que soit la couche qui l'a enveloppée
+     */
+    private static boolean estErreurQuota(Throwable erreur) {
+        for (Throwable t = erreur; t != null; t = t.getCause()) {
+            if (t instanceof RateLimitException) {
+                return true;
+            }
+            if (t instanceof HttpException http && http.statusCode() == 429) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Limite de concurrence courante
+     */
+    public double limite() {
+        verrou.lock();
+        try {
+            return limite;
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * @return Nombre d'appels en cours auprès du modèle
+     */
+    public int enCours() {
+        verrou.lock();
+        try {
+            return enCours;
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * @return Nombre d'appels en attente d'une place
+     */
+    public int profondeurFile() {
+        verrou.lock();
+        try {
+            return enAttente;
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * @return Nombre d'appels délestés (file pleine ou attente trop longue)
+     */
+    public long delestages() {
+        return delestages.get();
+    }
+
+    /**
+     * @return Nombre d'erreurs de quota renvoyées par le modèle
+     */
+    public long erreursQuota() {
+        return erreursQuota.get();
+    }
+
+    public String metriques() {
+        verrou.lock();
+        try {
+            return String.format("limite=%.1f, en cours=%d, file=%d, délestages=%d, erreurs quota=%d",
+                    limite, enCours, enAttente, delestages.get(), erreursQuota.get());
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    private enum Evenement {
+        AUCUN, SONDE, CONFIRMATION, INFIRMATION
+    }
+
+    /**
+     * Latences lissées d'un type d'appel, en nanosecondes.
+     * La référence est le plus bas niveau atteint par la latence courte. Elle ne remonte pas
+     * d'elle-même, sinon une surcharge durable deviendrait la nouvelle normale : quand le minimum
+     * d'une fenêtre (200 appels ou 30 s) dépasse nettement la référence, une sonde est demandée.
+     * Si la latence reste haute pendant la sonde (50 appels ou 10 s, à charge réduite),
+     * le ralentissement est confirmé : la référence est relevée et la limite rétablie.
+     */
+    private static class Latences {
+
+        private double courte;
+        private double reference;
+        private double minimumFenetre = Double.MAX_VALUE;
+        private int appelsFenetre;
+        private long debutFenetreNanos;
+        private boolean sondeEnCours;
+        private int appelsObserves;
+        /** Plus forte charge lissée supportée avec une latence proche de la référence */
+        private double chargeSaine;
+
+        Evenement observer(long latenceNanos, long maintenantNanos) {
+            if (courte == 0) {
+                courte = latenceNanos;
+                debutFenetreNanos = maintenantNanos;
+            } else {
+                courte += POIDS_LATENCE_COURTE * (latenceNanos - courte);
+            }
+            // La moyenne lissée part d'un appel isolé : ses premières valeurs ne comptent pas dans les minimums
+            if (++appelsObserves < 1 / POIDS_LATENCE_COURTE) {
+                return Evenement.AUCUN;
+            }
+            minimumFenetre = Math.min(minimumFenetre, courte);
+            if (reference > 0) {
+                reference = Math.min(reference, courte);
+            }
+
+            int appelsMax = sondeEnCours ? APPELS_FENETRE_SONDE : APPELS_FENETRE_REFERENCE;
+            long dureeMax = sondeEnCours ? DUREE_FENETRE_SONDE_NANOS : DUREE_FENETRE_REFERENCE_NANOS;
+            if (++appelsFenetre < appelsMax && maintenantNanos - debutFenetreNanos < dureeMax) {
+                return Evenement.AUCUN;
+            }
+            double minimum = minimumFenetre;
+            minimumFenetre = Double.MAX_VALUE;
+            appelsFenetre = 0;
+            debutFenetreNanos = maintenantNanos;
+
+            if (reference == 0) {
+                // Première fenêtre : la référence part du minimum de la moyenne lissée,
+                // pas d'un appel isolé
+                reference = minimum;
+                return Evenement.AUCUN;
+            }
+            if (minimum <= reference * SEUIL_SONDE) {
+                boolean sondee = sondeEnCours;
+                sondeEnCours = false;
+                return sondee ? Evenement.INFIRMATION : Evenement.AUCUN;
+            }
+            if (sondeEnCours) {
+                // Même à charge réduite la latence est restée haute : le modèle a ralenti.
+                // La référence repart du niveau actuel, le minimum de la sonde mêlant encore l'ancien
+                reference = Math.max(minimum, courte);
+                sondeEnCours = false;
+                return Evenement.CONFIRMATION;
+            }
+            sondeEnCours = true;
+            return Evenement.SONDE;
+        }
+
+        /**
+         * Lance la sonde tout de suite, dans une nouvelle fenêtre
+         *
+         * @return false si une sonde est déjà en cours ou si la référence n'est pas encore établie
+         */
+        boolean anticiperSonde(long maintenantNanos) {
+            if (sondeEnCours || reference == 0) {
+                return false;
+            }
+            sondeEnCours = true;
+            minimumFenetre = Double.MAX_VALUE;
+            appelsFenetre = 0;
+            debutFenetreNanos = maintenantNanos;
+            return true;
+        }
+
+        /**
+         * Pendant la première fenêtre, le minimum provisoire de la fenêtre tient lieu de référence
+         */
+        double reference() {
+            return reference > 0 ? reference : minimumFenetre;
+        }
+
+        long fenetreNanos(long latenceNanos) {
+            return (long) (courte > 0 ? courte : latenceNanos);
+        }
+    }
+
+    /**
+     * Levée quand un appel est délesté et qu'aucun modèle de repli n'est configuré
+     */
+    public static class SurchargeException extends RuntimeException {
+
+        public SurchargeException(String message) {
+            super(message);
+        }
+    }
+
+    public static class Builder {
+
+        private final ChatLanguageModel delegate;
+        private ChatLanguageModel repli;
+        private double limiteInitiale = 4;
+        private double limiteMin = 1;
+        private double limiteMax = 64;
+        private double toleranceLatence = 2.0;
+        private int tailleFileMax = 32;
+        private Duration attenteMax = Duration.ofSeconds(30);
+
+        private Builder(ChatLanguageModel delegate) {
+            this.delegate = delegate;
+        }
+
+        /**
+         * Modèle appelé pour les requêtes délestées (par exemple une réponse d'excuse fixe)
+         */
+        public Builder repli(ChatLanguageModel repli) {
+            this.repli = repli;
+            return this;
+        }
+
+        public Builder limiteInitiale(double limiteInitiale) {
+            this.limiteInitiale = limiteInitiale;
+            return this;
+        }
+
+        public Builder limiteMin(double limiteMin) {
+            this.limiteMin = limiteMin;
+            return this;
+        }
+
+        public Builder limiteMax(double limiteMax) {
+            this.limiteMax = limiteMax;
+            return this;
+        }
+
+        /**
+         * Facteur au-delà duquel la latence courte d'un type d'appel, rapportée à sa référence, réduit la limite
+         */
+        public Builder toleranceLatence(double toleranceLatence) {
+            this.toleranceLatence = toleranceLatence;
+            return this;
+        }
+
+        public Builder tailleFileMax(int tailleFileMax) {
+            this.tailleFileMax = tailleFileMax;
+            return this;
+        }
+
+        public Builder attenteMax(Duration attenteMax) {
+            this.attenteMax = attenteMax;
+            return this;
+        }
+
+        public ChatModelLimite build() {
+            if (limiteMin < 1 || limiteMax < limiteMin) {
+                throw new IllegalArgumentException("Limites invalides : min=" + limiteMin + ", max=" + limiteMax);
+            }
+            limiteInitiale = Math.max(limiteMin, Math.min(limiteMax, limiteInitiale));
+            return new ChatModelLimite(this);
+        }
+    }
+}
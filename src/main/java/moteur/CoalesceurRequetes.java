@@ -0,0 +1,71 @@
+package moteur;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Regroupement des requêtes identiques en cours ("single-flight") :
+ * tant qu'une exécution est en cours pour une clé, les appels suivants avec la même
+ * clé attendent son résultat au lieu de relancer le pipeline.
+ * Rien n'est mis en cache une fois l'exécution terminée.
+ */
+public class CoalesceurRequetes {
+
+    private final Map<String, CompletableFuture<String>> enCours = new ConcurrentHashMap<>();
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong partages = new AtomicLong();
+
+    /**
+     * Exécute l'action, ou attend l'exécution déjà en cours pour la même clé
+     *
+     * @param cle Clé identifiant la requête
+     * @param action Exécution du pipeline
+     * @return Le résultat, partagé entre tous les appelants concurrents de même clé
+     */
+    public String executer(String cle, Supplier<String> action) {
+        CompletableFuture<String> nouveau = new CompletableFuture<>();
+        CompletableFuture<String> existant = enCours.putIfAbsent(cle, nouveau);
+
+        if (existant != null) {
+            partages.incrementAndGet();
+            try {
+                return existant.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+
+        executions.incrementAndGet();
+        try {
+            String resultat = action.get();
+            nouveau.complete(resultat);
+            return resultat;
+        } catch (RuntimeException | Error e) {
+            nouveau.completeExceptionally(e);
+            throw e;
+        } finally {
+            enCours.remove(cle, nouveau);
+        }
+    }
+
+    /**
+     * @return Nombre d'exécutions réellement lancées
+     */
+    public long executions() {
+        return executions.get();
+    }
+
+    /**
+     * @return Nombre d'appels qui ont réutilisé une exécution en cours
+     */
+    public long partages() {
+        return partages.get();
+    }
+}
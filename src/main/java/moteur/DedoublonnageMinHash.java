@@ -0,0 +1,205 @@
+package moteur;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import stockage.AttributsSegment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.StringJoiner;
+import java.util.regex.Pattern;
+
+/**
+ * Élimination des segments quasi identiques avant le calcul des embeddings.
+ * Les supports de cours répètent sur chaque page les mêmes en-têtes, pieds de page,
+ * mentions légales ou gabarits de diapositive ; ces segments sont détectés par MinHash
+ * (signatures de shingles de caractères) et LSH (regroupement par bandes), puis vérifiés
+ * par la similarité de Jaccard estimée.
+ *
+ * Le premier segment de chaque groupe est conservé ; il porte en métadonnées le nombre
+ * de doublons retirés et leurs pages (voir {@link AttributsSegment#DOUBLONS}), pour l'affichage.
+ * Pour le filtrage, le segment conservé est indexé sous la page et la section de chaque doublon
+ * (voir {@code EmbeddingStoreIndexe.ajouterDedoublonnes}).
+ */
+public class DedoublonnageMinHash {
+
+    private static final int TAILLE_SHINGLE = 5;
+    private static final int BANDES = 16;
+    private static final int LIGNES_PAR_BANDE = 8;
+    private static final int NOMBRE_HASH = BANDES * LIGNES_PAR_BANDE;
+
+    /** "page 3", "Page 3 / 12", "page 3 sur 12", "page 3 of 12" */
+    private static final Pattern NUMERO_PAGE = Pattern.compile(
+            "\\bpage\\s*\\d+(\\s*(/|sur|of)\\s*\\d+)?", Pattern.CASE_INSENSITIVE);
+    /** Ligne ne contenant qu'un numéro de page ou de diapositive ("12", "12 / 40") */
+    private static final Pattern LIGNE_NUMERO = Pattern.compile("(?m)^\\s*\\d+(\\s*/\\s*\\d+)?\\s*$");
+
+    private final double seuilJaccard;
+    private final long[] multiplicateurs = new long[NOMBRE_HASH];
+    private final long[] decalages = new long[NOMBRE_HASH];
+
+    /**
+     * Résultat du dédoublonnage
+     *
+     * @param conserves Segments à indexer, dans l'ordre d'origine
+     * @param doublons Pour chaque segment conservé ayant des doublons, les segments retirés
+     */
+    public record Resultat(List<TextSegment> conserves, Map<TextSegment, List<TextSegment>> doublons) {
+
+        public int nombreRetires() {
+            return doublons.values().stream().mapToInt(List::size).sum();
+        }
+    }
+
+    public DedoublonnageMinHash() {
+        this(0.8);
+    }
+
+    /**
+     * @param seuilJaccard Similarité de Jaccard estimée à partir de laquelle deux segments sont des doublons
+     */
+    public DedoublonnageMinHash(double seuilJaccard) {
+        this.seuilJaccard = seuilJaccard;
+        // Graine fixe : les signatures sont reproductibles d'une exécution à l'autre
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < NOMBRE_HASH; i++) {
+            multiplicateurs[i] = random.nextLong() | 1;
+            decalages[i] = random.nextLong();
+        }
+    }
+
+    public Resultat dedoublonner(List<TextSegment> segments) {
+        List<long[]> signaturesConservees = new ArrayList<>();
+        List<TextSegment> conserves = new ArrayList<>();
+        List<List<TextSegment>> doublonsParConserve = new ArrayList<>();
+        List<Map<Long, List<Integer>>> buckets = new ArrayList<>();
+        for (int b = 0; b < BANDES; b++) {
+            buckets.add(new HashMap<>());
+        }
+
+        for (TextSegment segment : segments) {
+            long[] signature = signature(segment.text());
+
+            int original = -1;
+            Set<Integer> dejaCompares = new HashSet<>();
+            for (int b = 0; b < BANDES && original < 0; b++) {
+                for (int candidat : buckets.get(b).getOrDefault(cleBande(signature, b), List.of())) {
+                    if (dejaCompares.add(candidat)
+                            && similarite(signature, signaturesConservees.get(candidat)) >= seuilJaccard) {
+                        original = candidat;
+                        break;
+                    }
+                }
+            }
+
+            if (original >= 0) {
+                doublonsParConserve.get(original).add(segment);
+                continue;
+            }
+
+            int position = conserves.size();
+            conserves.add(segment);
+            signaturesConservees.add(signature);
+            doublonsParConserve.add(new ArrayList<>());
+            for (int b = 0; b < BANDES; b++) {
+                buckets.get(b).computeIfAbsent(cleBande(signature, b), k -> new ArrayList<>()).add(position);
+            }
+        }
+
+        List<TextSegment> resultat = new ArrayList<>();
+        Map<TextSegment, List<TextSegment>> doublons = new LinkedHashMap<>();
+        for (int i = 0; i < conserves.size(); i++) {
+            List<TextSegment> retires = doublonsParConserve.get(i);
+            if (retires.isEmpty()) {
+                resultat.add(conserves.get(i));
+                continue;
+            }
+            TextSegment annote = annoter(conserves.get(i), retires);
+            resultat.add(annote);
+            doublons.put(annote, retires);
+        }
+        return new Resultat(resultat, doublons);
+    }
+
+    private static TextSegment annoter(TextSegment segment, List<TextSegment> retires) {
+        Metadata metadata = segment.metadata().copy();
+        metadata.put(AttributsSegment.DOUBLONS, retires.size());
+
+        StringJoiner pages = new StringJoiner(",");
+        for (TextSegment retire : retires) {
+            Object page = retire.metadata().toMap().get(AttributsSegment.PAGE);
+            if (page != null) {
+                pages.add(Objects.toString(page));
+            }
+        }
+        if (pages.length() > 0) {
+            metadata.put(AttributsSegment.PAGES_DOUBLONS, pages.toString());
+        }
+        return TextSegment.from(segment.text(), metadata);
+    }
+
+    /**
+     * Signature MinHash des shingles de caractères du texte normalisé.
+     * Seuls les numéros de page sont neutralisés, pour que "Page 3" et "Page 4" soient identiques ;
+     * les autres nombres (versions, ports, années...) distinguent les segments.
+     */
+    private long[] signature(String texte) {
+        String sansNumeros = LIGNE_NUMERO.matcher(texte).replaceAll("#");
+        sansNumeros = NUMERO_PAGE.matcher(sansNumeros).replaceAll("page #");
+        String normalise = sansNumeros.toLowerCase(Locale.ROOT)
+                .replaceAll("\\s+", " ")
+                .trim();
+
+        long[] signature = new long[NOMBRE_HASH];
+        Arrays.fill(signature, Long.MAX_VALUE);
+
+        int fin = Math.max(1, normalise.length() - TAILLE_SHINGLE + 1);
+        for (int debut = 0; debut < fin; debut++) {
+            String shingle = normalise.substring(debut, Math.min(normalise.length(), debut + TAILLE_SHINGLE));
+            long hashShingle = melanger(shingle.hashCode());
+            for (int i = 0; i < NOMBRE_HASH; i++) {
+                long h = melanger(hashShingle * multiplicateurs[i] + decalages[i]);
+                if (h < signature[i]) {
+                    signature[i] = h;
+                }
+            }
+        }
+        return signature;
+    }
+
+    private static long cleBande(long[] signature, int bande) {
+        long cle = bande;
+        for (int i = bande * LIGNES_PAR_BANDE; i < (bande + 1) * LIGNES_PAR_BANDE; i++) {
+            cle = cle * 31 + signature[i];
+        }
+        return melanger(cle);
+    }
+
+    private static double similarite(long[] a, long[] b) {
+        int egaux = 0;
+        for (int i = 0; i < NOMBRE_HASH; i++) {
+            if (a[i] == b[i]) {
+                egaux++;
+            }
+        }
+        return (double) egaux / NOMBRE_HASH;
+    }
+
+    /**
+     * Finaliseur de SplitMix64 : répartit uniformément les bits d'un hash
+     */
+    private static long melanger(long x) {
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+}
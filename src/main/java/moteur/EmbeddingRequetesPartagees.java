@@ -0,0 +1,92 @@
+package moteur;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * EmbeddingModel des requêtes : une même question n'est vectorisée qu'une fois.
+ * En routage spéculatif, plusieurs retrievers cherchent la même requête en parallèle ;
+ * le premier calcule l'embedding (ONNX, coûteux en CPU) et les autres attendent son résultat.
+ * Les derniers embeddings calculés sont gardés pour les recherches relancées juste après.
+ *
+ * Les appels groupés ({@link #embedAll}) de l'ingestion passent directement au modèle.
+ */
+public class EmbeddingRequetesPartagees implements EmbeddingModel {
+
+    private static final int TAILLE_MAX = 256;
+
+    private final EmbeddingModel delegate;
+    private final Map<String, CompletableFuture<Response<Embedding>>> recents =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CompletableFuture<Response<Embedding>>> eldest) {
+                    return size() > TAILLE_MAX;
+                }
+            };
+
+    public EmbeddingRequetesPartagees(EmbeddingModel delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Response<Embedding> embed(String texte) {
+        CompletableFuture<Response<Embedding>> embedding;
+        boolean calculer = false;
+        synchronized (recents) {
+            embedding = recents.get(texte);
+            if (embedding == null) {
+                embedding = new CompletableFuture<>();
+                recents.put(texte, embedding);
+                calculer = true;
+            }
+        }
+
+        if (calculer) {
+            try {
+                embedding.complete(delegate.embed(texte));
+            } catch (RuntimeException | Error e) {
+                // Un échec n'est pas gardé : la prochaine requête identique relance le calcul
+                synchronized (recents) {
+                    recents.remove(texte, embedding);
+                }
+                embedding.completeExceptionally(e);
+                throw e;
+            }
+        }
+
+        try {
+            return embedding.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public Response<Embedding> embed(TextSegment segment) {
+        return embed(segment.text());
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+        return delegate.embedAll(segments);
+    }
+
+    @Override
+    public int dimension() {
+        return delegate.dimension();
+    }
+}
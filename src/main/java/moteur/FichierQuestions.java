@@ -0,0 +1,29 @@
+package moteur;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lecture d'un fichier de questions : une question par ligne,
+ * les lignes vides et celles commençant par '#' sont ignorées.
+ */
+public final class FichierQuestions {
+
+    private FichierQuestions() {
+    }
+
+    public static List<String> lire(Path fichier) throws IOException {
+        List<String> questions = new ArrayList<>();
+        for (String ligne : Files.readAllLines(fichier, StandardCharsets.UTF_8)) {
+            String question = ligne.trim();
+            if (!question.isEmpty() && !question.startsWith("#")) {
+                questions.add(question);
+            }
+        }
+        return questions;
+    }
+}
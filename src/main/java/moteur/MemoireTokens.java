@@ -0,0 +1,330 @@
+package moteur;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.ToIntFunction;
+
+/**
+ * ChatMemory bornée en nombre de tokens plutôt qu'en nombre de messages.
+ * <ul>
+ *     <li>Le contenu récupéré par le RAG n'est conservé que pour la question en cours :
+ *     dès qu'une nouvelle question arrive, les questions précédentes sont ramenées
+ *     à leur texte d'origine.</li>
+ *     <li>Quand l'historique dépasse le budget, les échanges les plus anciens sont retirés
+ *     et résumés en arrière-plan par le modèle ; le résumé est injecté en message système.
+ *     La requête en cours n'attend jamais le résumé.</li>
+ * </ul>
+ * La taille du prompt reste ainsi à peu près constante au fil d'une longue conversation.
+ */
+public class MemoireTokens implements ChatMemory {
+
+    /** Séparateur ajouté par le DefaultContentInjector entre la question et le contenu récupéré */
+    private static final String MARQUEUR_CONTENU = "\n\nAnswer using the following information:";
+
+    private static final String PROMPT_RESUME =
+            "Résume la conversation suivante en moins de %d mots, en conservant les faits, " +
+            "les questions et les conclusions utiles pour la suite.\n\n" +
+            "Résumé précédent :\n%s\n\nNouveaux échanges :\n%s";
+
+    /**
+     * Executor par défaut des résumés : des threads dédiés plutôt que le pool commun,
+     * que des appels bloquants au modèle priveraient de ses threads
+     */
+    private static final Executor EXECUTOR_RESUME = Executors.newFixedThreadPool(2, runnable -> {
+        Thread thread = new Thread(runnable, "memoire-resume");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Object id;
+    private final int maxTokens;
+    private final int maxMotsResume;
+    private final ToIntFunction<String> estimateurTokens;
+    private final ChatLanguageModel chatModel;
+    private final Executor executor;
+
+    private final List<ChatMessage> messages = new ArrayList<>();
+    private final List<ChatMessage> aResumer = new ArrayList<>();
+    private SystemMessage systemMessage;
+    private String resume = "";
+    private boolean resumeEnCours;
+    /** Incrémentée par clear() : un résumé lancé avant n'appartient plus à la conversation */
+    private long generation;
+
+    private MemoireTokens(Builder builder) {
+        this.id = builder.id;
+        this.maxTokens = builder.maxTokens;
+        this.maxMotsResume = builder.maxMotsResume;
+        this.estimateurTokens = builder.estimateurTokens;
+        this.chatModel = builder.chatModel;
+        this.executor = builder.executor;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public Object id() {
+        return id;
+    }
+
+    @Override
+    public synchronized void add(ChatMessage message) {
+        if (message instanceof SystemMessage system) {
+            systemMessage = system;
+            return;
+        }
+
+        if (message instanceof UserMessage) {
+            // La question précédente n'a plus besoin de son contenu récupéré
+            for (int i = 0; i < messages.size(); i++) {
+                if (messages.get(i) instanceof UserMessage userMessage) {
+                    messages.set(i, sansContenuRecupere(userMessage));
+                }
+            }
+        }
+        messages.add(message);
+        compacter();
+    }
+
+    @Override
+    public synchronized List<ChatMessage> messages() {
+        List<ChatMessage> resultat = new ArrayList<>();
+        SystemMessage system = messageSysteme();
+        if (system != null) {
+            resultat.add(system);
+        }
+        resultat.addAll(messages);
+        return resultat;
+    }
+
+    @Override
+    public synchronized void clear() {
+        messages.clear();
+        aResumer.clear();
+        systemMessage = null;
+        resume = "";
+        generation++;
+    }
+
+    /**
+     * @return Le résumé courant des échanges retirés de l'historique
+     */
+    public synchronized String resume() {
+        return resume;
+    }
+
+    /**
+     * Retire les échanges les plus anciens tant que l'historique dépasse le budget,
+     * en gardant toujours le dernier échange entier
+     */
+    private void compacter() {
+        while (tokens() > maxTokens) {
+            int finEchange = finPremierEchange();
+            if (finEchange >= messages.size()) {
+                break;
+            }
+            List<ChatMessage> echange = messages.subList(0, finEchange);
+            aResumer.addAll(echange);
+            echange.clear();
+        }
+
+        if (!aResumer.isEmpty() && !resumeEnCours && chatModel != null) {
+            resumeEnCours = true;
+            lancerResume();
+        }
+    }
+
+    /**
+     * Appelée sous le verrou. Si l'executor refuse la tâche (arrêté, file pleine), le résumé
+     * n'est pas marqué en cours : les échanges restent à résumer et seront repris au prochain compactage.
+     */
+    private void lancerResume() {
+        try {
+            executor.execute(this::resumer);
+        } catch (RejectedExecutionException e) {
+            resumeEnCours = false;
+        }
+    }
+
+    /**
+     * Un échange commence à une question et s'étend jusqu'à la question suivante,
+     * pour ne jamais séparer un appel d'outil de son résultat
+     */
+    private int finPremierEchange() {
+        for (int i = 1; i < messages.size(); i++) {
+            if (messages.get(i) instanceof UserMessage) {
+                return i;
+            }
+        }
+        return messages.size();
+    }
+
+    private int tokens() {
+        int total = 0;
+        SystemMessage system = messageSysteme();
+        if (system != null) {
+            total += estimateurTokens.applyAsInt(system.text());
+        }
+        for (ChatMessage message : messages) {
+            total += estimateurTokens.applyAsInt(texte(message));
+        }
+        return total;
+    }
+
+    private SystemMessage messageSysteme() {
+        if (resume.isEmpty()) {
+            return systemMessage;
+        }
+        String texteResume = "Résumé de la conversation précédente :\n" + resume;
+        return systemMessage == null
+                ? SystemMessage.from(texteResume)
+                : SystemMessage.from(systemMessage.text() + "\n\n" + texteResume);
+    }
+
+    /**
+     * Résume en arrière-plan les échanges retirés, puis recommence s'il en est arrivé d'autres
+     */
+    private void resumer() {
+        List<ChatMessage> echanges;
+        String resumePrecedent;
+        long generationResumee;
+        synchronized (this) {
+            echanges = new ArrayList<>(aResumer);
+            aResumer.clear();
+            resumePrecedent = resume;
+            generationResumee = generation;
+        }
+
+        String nouveauResume = resumePrecedent;
+        try {
+            StringBuilder transcription = new StringBuilder();
+            for (ChatMessage message : echanges) {
+                if (message instanceof UserMessage) {
+                    transcription.append("Utilisateur : ").append(texte(message)).append('\n');
+                } else if (message instanceof AiMessage) {
+                    transcription.append("Assistant : ").append(texte(message)).append('\n');
+                }
+            }
+            nouveauResume = chatModel.generate(String.format(PROMPT_RESUME, maxMotsResume,
+                    resumePrecedent.isEmpty() ? "(aucun)" : resumePrecedent, transcription)).trim();
+        } catch (RuntimeException e) {
+            // Les échanges sont perdus pour le résumé mais la conversation continue
+            System.err.println("Erreur lors du résumé de la mémoire : " + e.getMessage());
+        }
+
+        synchronized (this) {
+            // Si la mémoire a été vidée pendant l'appel, ce résumé porte sur l'ancienne conversation
+            if (generationResumee == generation) {
+                resume = nouveauResume;
+            }
+            if (aResumer.isEmpty()) {
+                resumeEnCours = false;
+            } else {
+                lancerResume();
+            }
+        }
+    }
+
+    private static UserMessage sansContenuRecupere(UserMessage userMessage) {
+        if (!userMessage.hasSingleText()) {
+            return userMessage;
+        }
+        String texte = userMessage.singleText();
+        int marqueur = texte.indexOf(MARQUEUR_CONTENU);
+        if (marqueur < 0) {
+            return userMessage;
+        }
+        String question = texte.substring(0, marqueur);
+        return userMessage.name() == null ? UserMessage.from(question) : UserMessage.from(userMessage.name(), question);
+    }
+
+    /**
+     * Texte d'un message, quel que soit son type
+     */
+    static String texte(ChatMessage message) {
+        if (message instanceof UserMessage userMessage) {
+            return userMessage.hasSingleText() ? userMessage.singleText() : userMessage.contents().toString();
+        }
+        if (message instanceof AiMessage aiMessage) {
+            return aiMessage.text() != null ? aiMessage.text() : String.valueOf(aiMessage.toolExecutionRequests());
+        }
+        if (message instanceof ToolExecutionResultMessage resultat) {
+            return resultat.text();
+        }
+        if (message instanceof SystemMessage system) {
+            return system.text();
+        }
+        return message.toString();
+    }
+
+    public static class Builder {
+
+        private Object id = UUID.randomUUID().toString();
+        private int maxTokens = 1500;
+        private int maxMotsResume = 150;
+        private ToIntFunction<String> estimateurTokens = texte -> texte.length() / 4 + 1;
+        private ChatLanguageModel chatModel;
+        private Executor executor = EXECUTOR_RESUME;
+
+        public Builder id(Object id) {
+            this.id = id;
+            return this;
+        }
+
+        /**
+         * Budget de tokens de l'historique, résumé compris
+         */
+        public Builder maxTokens(int maxTokens) {
+            this.maxTokens = maxTokens;
+            return this;
+        }
+
+        public Builder maxMotsResume(int maxMotsResume) {
+            this.maxMotsResume = maxMotsResume;
+            return this;
+        }
+
+        /**
+         * Estimation du nombre de tokens d'un texte (par défaut : 4 caractères par token)
+         */
+        public Builder estimateurTokens(ToIntFunction<String> estimateurTokens) {
+            this.estimateurTokens = estimateurTokens;
+            return this;
+        }
+
+        /**
+         * Modèle utilisé pour résumer les échanges retirés ; sans modèle, ils sont simplement oubliés
+         */
+        public Builder chatModel(ChatLanguageModel chatModel) {
+            this.chatModel = chatModel;
+            return this;
+        }
+
+        /**
+         * Executor des résumés, hors du chemin des requêtes (par défaut, deux threads dédiés
+         * partagés par toutes les mémoires)
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public MemoireTokens build() {
+            return new MemoireTokens(this);
+        }
+    }
+}
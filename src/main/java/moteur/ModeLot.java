@@ -0,0 +1,292 @@
+package moteur;
+
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import test1.Assistant;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Mode lot : répond à un fichier de questions sans interaction, en parallèle.
+ * Les questions sont traitées par un pool borné de workers ; chaque réponse est écrite
+ * dans le fichier JSONL de sortie dès qu'elle est prête, avec sa durée.
+ * Si le fichier de sortie existe déjà, les questions déjà répondues avec succès sont
+ * sautées : une exécution interrompue reprend là où elle s'était arrêtée. Une ligne n'est
+ * reprise que si l'empreinte de sa question correspond toujours à la question du même index :
+ * un fichier de questions modifié entre deux exécutions est retraité là où il a changé.
+ * Une erreur d'écriture de la sortie (disque plein...) arrête le lot : aucune question
+ * n'est plus envoyée au modèle tant que ses réponses ne peuvent pas être enregistrées.
+ *
+ * Arguments (cle=valeur) :
+ * <ul>
+ *     <li>questions : fichier de questions (obligatoire)</li>
+ *     <li>sortie : fichier JSONL des résultats (obligatoire)</li>
+ *     <li>mode : naif, routage, conditionnel ou web (défaut naif)</li>
+ *     <li>concurrence : nombre de questions traitées en parallèle (défaut 4)</li>
+ *     <li>limiteur : true pour placer Gemini derrière un {@link ChatModelLimite} (défaut false) ;
+ *     la concurrence reste sinon fixée par le nombre de workers</li>
+ * </ul>
+ *
+ * Chaque ligne de sortie a la forme :
+ * {@code {"index":3,"empreinte":"<sha-256 de la question>","question":"...","statut":"ok","reponse":"...",
+ * "debut":"...","duree_ms":1234}}
+ */
+public class ModeLot {
+
+    private static final Pattern LIGNE_OK = Pattern.compile(
+            "^\\{\"index\":(\\d+),\"empreinte\":\"([0-9a-f]{64})\",.*\"statut\":\"ok\"");
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int egal = arg.indexOf('=');
+            if (egal > 0) {
+                options.put(arg.substring(0, egal), arg.substring(egal + 1));
+            }
+        }
+
+        if (!options.containsKey("questions") || !options.containsKey("sortie")) {
+            System.err.println("Usage : ModeLot questions=<fichier> sortie=<fichier.jsonl> [mode=naif] [concurrence=4] " +
+                    "[limiteur=false]");
+            return;
+        }
+
+        ChatLanguageModel gemini = MoteurRag.creerGemini();
+        if (gemini == null) {
+            System.err.println("Erreur : La variable d'environnement GEMINI_KEY n'est pas définie.");
+            return;
+        }
+
+        List<String> questions = FichierQuestions.lire(Paths.get(options.get("questions")));
+        Path sortie = Paths.get(options.get("sortie"));
+        ModePipeline mode = ModePipeline.depuisNom(options.getOrDefault("mode", "naif"));
+        int concurrence = Integer.parseInt(options.getOrDefault("concurrence", "4"));
+        boolean limiteur = Boolean.parseBoolean(options.getOrDefault("limiteur", "false"));
+
+        Set<String> dejaRepondues = lireReponsesOk(sortie);
+        preparerSortie(sortie);
+
+        // Le nombre de workers borne déjà la concurrence ; le limiteur n'ajoute que l'adaptation au quota
+        ChatModelLimite chatModelLimite = limiteur
+                ? ChatModelLimite.builder(gemini)
+                        .limiteInitiale(concurrence)
+                        .limiteMax(Math.max(concurrence, 1))
+                        .build()
+                : null;
+        ChatLanguageModel chatModel = limiteur ? chatModelLimite : gemini;
+        MoteurRag moteur = new MoteurRag(new RessourcesPartagees(), chatModel, MoteurRag.creerTavily());
+        moteur.retrievalAugmentor(mode);
+
+        List<Integer> aTraiter = new ArrayList<>();
+        for (int i = 0; i < questions.size(); i++) {
+            if (!dejaRepondues.contains(cle(i, questions.get(i)))) {
+                aTraiter.add(i);
+            }
+        }
+        System.out.printf("%d questions, %d déjà répondues, %d à traiter en mode %s avec %d workers%n",
+                questions.size(), questions.size() - aTraiter.size(), aTraiter.size(), mode.nom(), concurrence);
+
+        ExecutorService pool = Executors.newFixedThreadPool(concurrence);
+        // Le semaphore évite de mettre tout le fichier en file d'attente d'un coup
+        Semaphore places = new Semaphore(concurrence * 2);
+        AtomicInteger terminees = new AtomicInteger();
+        AtomicInteger erreurs = new AtomicInteger();
+        AtomicReference<UncheckedIOException> echecEcriture = new AtomicReference<>();
+        long debutLot = System.nanoTime();
+
+        try (BufferedWriter writer = Files.newBufferedWriter(sortie, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+
+            for (int index : aTraiter) {
+                String question = questions.get(index);
+                places.acquire();
+                if (echecEcriture.get() != null) {
+                    break;
+                }
+                pool.submit(() -> {
+                    try {
+                        if (echecEcriture.get() != null) {
+                            return;
+                        }
+                        Resultat resultat = repondre(moteur, mode, index, question);
+                        ecrire(writer, resultat.ligne());
+                        if (!resultat.ok()) {
+                            erreurs.incrementAndGet();
+                        }
+                        System.out.printf("[%d/%d] question %d traitée%n", terminees.incrementAndGet(), aTraiter.size(), index);
+                    } catch (UncheckedIOException e) {
+                        echecEcriture.compareAndSet(null, e);
+                    } finally {
+                        places.release();
+                    }
+                });
+            }
+
+            if (echecEcriture.get() != null) {
+                pool.shutdownNow();
+            } else {
+                pool.shutdown();
+            }
+            pool.awaitTermination(1, TimeUnit.DAYS);
+        }
+
+        UncheckedIOException echec = echecEcriture.get();
+        if (echec != null) {
+            throw new IOException("Lot interrompu après " + terminees.get() + " réponses : écriture impossible dans "
+                    + sortie + ". Relancez la même commande une fois le problème corrigé.", echec.getCause());
+        }
+
+        System.out.printf("%nLot terminé en %.1f s : %d réponses, %d erreurs%n",
+                (System.nanoTime() - debutLot) / 1e9, terminees.get(), erreurs.get());
+        if (chatModelLimite != null) {
+            System.out.println("Limiteur Gemini : " + chatModelLimite.metriques());
+        }
+        if (erreurs.get() > 0) {
+            System.out.println("Relancez la même commande pour retraiter les questions en erreur.");
+        }
+    }
+
+    /**
+     * Résultat d'une question
+     *
+     * @param ok true si le modèle a répondu
+     * @param ligne Ligne JSON à écrire dans la sortie
+     */
+    private record Resultat(boolean ok, String ligne) {
+    }
+
+    /**
+     * Pose une question avec une conversation vierge et retourne le résultat avec sa ligne JSON
+     */
+    private static Resultat repondre(MoteurRag moteur, ModePipeline mode, int index, String question) {
+        Instant debut = Instant.now();
+        long debutNanos = System.nanoTime();
+        StringBuilder json = new StringBuilder();
+        boolean ok;
+        json.append("{\"index\":").append(index)
+                .append(",\"empreinte\":\"").append(empreinte(question)).append('"')
+                .append(",\"question\":").append(echapper(question));
+        try {
+            Assistant assistant = moteur.nouvelleSession(mode, MessageWindowChatMemory.withMaxMessages(10));
+            String reponse = assistant.chat(question);
+            json.append(",\"statut\":\"ok\",\"reponse\":").append(echapper(reponse));
+            ok = true;
+        } catch (Exception e) {
+            ok = false;
+            json.append(",\"statut\":\"erreur\",\"erreur\":").append(echapper(String.valueOf(e.getMessage())));
+        }
+        json.append(",\"debut\":\"").append(debut).append('"')
+                .append(",\"duree_ms\":").append((System.nanoTime() - debutNanos) / 1_000_000)
+                .append('}');
+        return new Resultat(ok, json.toString());
+    }
+
+    private static void ecrire(BufferedWriter writer, String ligne) {
+        synchronized (writer) {
+            try {
+                writer.write(ligne);
+                writer.newLine();
+                writer.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Lit les clés (index et empreinte de la question) des réponses réussies d'un fichier de sortie existant
+     */
+    private static Set<String> lireReponsesOk(Path sortie) throws IOException {
+        Set<String> cles = new HashSet<>();
+        if (!Files.exists(sortie)) {
+            return cles;
+        }
+        for (String ligne : Files.readAllLines(sortie, StandardCharsets.UTF_8)) {
+            Matcher matcher = LIGNE_OK.matcher(ligne);
+            if (matcher.find() && ligne.endsWith("}")) {
+                cles.add(matcher.group(1) + ":" + matcher.group(2));
+            }
+        }
+        return cles;
+    }
+
+    private static String cle(int index, String question) {
+        return index + ":" + empreinte(question);
+    }
+
+    /**
+     * Empreinte SHA-256 d'une question, en hexadécimal
+     */
+    private static String empreinte(String question) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(sha256.digest(question.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Termine par un saut de ligne une dernière ligne tronquée par une interruption,
+     * pour que les nouveaux résultats commencent sur une ligne propre
+     */
+    private static void preparerSortie(Path sortie) throws IOException {
+        if (!Files.exists(sortie) || Files.size(sortie) == 0) {
+            return;
+        }
+        try (RandomAccessFile fichier = new RandomAccessFile(sortie.toFile(), "rw")) {
+            fichier.seek(fichier.length() - 1);
+            if (fichier.read() != '\n') {
+                fichier.write('\n');
+            }
+        }
+    }
+
+    private static String echapper(String texte) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < texte.length(); i++) {
+            char c = texte.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
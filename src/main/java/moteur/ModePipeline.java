@@ -0,0 +1,46 @@
+package moteur;
+
+/**
+ * Modes d'assistant proposés par le moteur.
+ * Chaque mode correspond à l'un des tests 1 à 5, mais s'appuie sur les
+ * ressources partagées (modèle d'embedding et index) du moteur.
+ */
+public enum ModePipeline {
+
+    NAIF("naif", "RAG naïf sur le support RAG (tests 1 et 2)"),
+    ROUTAGE("routage", "Routage LLM entre le support RAG et le cours de cybersécurité (test 3)"),
+    CONDITIONNEL("conditionnel", "RAG uniquement pour les questions sur l'IA (test 4)"),
+    WEB("web", "RAG hybride documents locaux + recherche Web (test 5)");
+
+    private final String nom;
+    private final String description;
+
+    ModePipeline(String nom, String description) {
+        this.nom = nom;
+        this.description = description;
+    }
+
+    public String nom() {
+        return nom;
+    }
+
+    public String description() {
+        return description;
+    }
+
+    /**
+     * Retrouve un mode à partir de son nom (insensible à la casse)
+     *
+     * @param nom Nom du mode, par exemple "routage"
+     * @return Le mode correspondant
+     * @throws IllegalArgumentException si aucun mode ne porte ce nom
+     */
+    public static ModePipeline depuisNom(String nom) {
+        for (ModePipeline mode : values()) {
+            if (mode.nom.equalsIgnoreCase(nom.trim()) || mode.name().equalsIgnoreCase(nom.trim())) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Mode inconnu : " + nom);
+    }
+}
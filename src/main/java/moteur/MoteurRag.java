@@ -0,0 +1,306 @@
+package moteur;
+
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.googleai.GoogleAiGeminiChatModel;
+import dev.langchain4j.rag.DefaultRetrievalAugmentor;
+import dev.langchain4j.rag.RetrievalAugmentor;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.content.retriever.WebSearchContentRetriever;
+import dev.langchain4j.rag.query.router.DefaultQueryRouter;
+import dev.langchain4j.rag.query.router.LanguageModelQueryRouter;
+import dev.langchain4j.rag.query.router.QueryRouter;
+import dev.langchain4j.service.AiServices;
+import dev.langchain4j.web.search.WebSearchEngine;
+import dev.langchain4j.web.search.tavily.TavilyWebSearchEngine;
+import test1.Assistant;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moteur unique hébergeant tous les modes d'assistant dans une seule JVM.
+ * Le modèle d'embedding et les index des documents sont chargés une seule fois
+ * (voir {@link RessourcesPartagees}) ; chaque mode n'ajoute que son RetrievalAugmentor,
+ * construit à la première utilisation puis réutilisé.
+ * En routage spéculatif, les recherches locales des modes routage et conditionnel
+ * démarrent en même temps que l'appel au LLM de routage (voir {@link RoutageSpeculatif}).
+ */
+public class MoteurRag {
+
+    private static final int COEURS = Runtime.getRuntime().availableProcessors();
+
+    private final RessourcesPartagees ressources;
+    private final ChatLanguageModel chatModel;
+    private final WebSearchEngine webSearchEngine;
+    private final boolean routageSpeculatif;
+    /** Recherches anticipées : calcul local (embedding ONNX), donc un thread par cœur et une file bornée */
+    private final ExecutorService executorRecherche = new ThreadPoolExecutor(COEURS, COEURS,
+            0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(4 * COEURS), fabriqueThreads("moteur-recherche"));
+    /** Résumés de mémoire : appels au LLM, séparés pour ne pas occuper les threads de recherche */
+    private final ExecutorService executorResume = Executors.newFixedThreadPool(2, fabriqueThreads("moteur-resume"));
+    private final Map<ModePipeline, RetrievalAugmentor> augmentors = new EnumMap<>(ModePipeline.class);
+    private final CoalesceurRequetes coalesceur = new CoalesceurRequetes();
+
+    /**
+     * @param ressources Ressources partagées (modèle d'embedding et index)
+     * @param chatModel Modèle de chat utilisé pour le routage et la génération
+     * @param webSearchEngine Moteur de recherche Web, ou null si le mode WEB n'est pas disponible
+     */
+    public MoteurRag(RessourcesPartagees ressources, ChatLanguageModel chatModel, WebSearchEngine webSearchEngine) {
+        this(ressources, chatModel, webSearchEngine, true);
+    }
+
+    /**
+     * @param ressources Ressources partagées (modèle d'embedding et index)
+     * @param chatModel Modèle de chat utilisé pour le routage et la génération
+     * @param webSearchEngine Moteur de recherche Web, ou null si le mode WEB n'est pas disponible
+     * @param routageSpeculatif true pour lancer les recherches locales pendant la décision de routage
+     */
+    public MoteurRag(RessourcesPartagees ressources, ChatLanguageModel chatModel, WebSearchEngine webSearchEngine,
+                     boolean routageSpeculatif) {
+        this.ressources = ressources;
+        this.chatModel = chatModel;
+        this.webSearchEngine = webSearchEngine;
+        this.routageSpeculatif = routageSpeculatif;
+    }
+
+    public RessourcesPartagees ressources() {
+        return ressources;
+    }
+
+    public ChatLanguageModel chatModel() {
+        return chatModel;
+    }
+
+    public CoalesceurRequetes coalesceur() {
+        return coalesceur;
+    }
+
+    /**
+     * Crée un assistant pour le mode demandé avec sa propre mémoire.
+     * L'assistant est léger : il réutilise les index et le RetrievalAugmentor du mode.
+     *
+     * @param mode Mode de l'assistant
+     * @param chatMemory Mémoire de la conversation
+     * @return Assistant prêt à l'emploi
+     */
+    public Assistant nouvelAssistant(ModePipeline mode, ChatMemory chatMemory) {
+        return AiServices.builder(Assistant.class)
+                .chatLanguageModel(ChatModelLimite.pourType(chatModel, ChatModelLimite.TYPE_GENERATION))
+                .chatMemory(chatMemory)
+                .retrievalAugmentor(retrievalAugmentor(mode))
+                .build();
+    }
+
+    /**
+     * Crée une mémoire de session bornée en tokens, dont les anciens échanges
+     * sont résumés en arrière-plan par le modèle du moteur
+     *
+     * @return Nouvelle mémoire de conversation
+     */
+    public ChatMemory nouvelleMemoire() {
+        return MemoireTokens.builder()
+                .chatModel(ChatModelLimite.pourType(chatModel, ChatModelLimite.TYPE_RESUME))
+                .executor(executorResume)
+                .build();
+    }
+
+    /**
+     * Crée l'assistant d'une session utilisateur : les questions identiques posées en même temps
+     * par plusieurs sessions du même mode, avec le même historique, ne déclenchent qu'une exécution.
+     *
+     * @param mode Mode de l'assistant
+     * @param chatMemory Mémoire de la session
+     * @return Assistant de la session
+     */
+    public Assistant nouvelleSession(ModePipeline mode, ChatMemory chatMemory) {
+        return new AssistantCoalescent(coalesceur, mode.nom(), nouvelAssistant(mode, chatMemory), chatMemory);
+    }
+
+    /**
+     * Retourne le RetrievalAugmentor partagé d'un mode, en le construisant au premier appel
+     */
+    public synchronized RetrievalAugmentor retrievalAugmentor(ModePipeline mode) {
+        RetrievalAugmentor augmentor = augmentors.get(mode);
+        if (augmentor == null) {
+            augmentor = DefaultRetrievalAugmentor.builder()
+                    .queryRouter(queryRouter(mode))
+                    .build();
+            augmentors.put(mode, augmentor);
+        }
+        return augmentor;
+    }
+
+    private QueryRouter queryRouter(ModePipeline mode) {
+        ChatLanguageModel modeleRoutage = ChatModelLimite.pourType(chatModel, ChatModelLimite.TYPE_ROUTAGE);
+        switch (mode) {
+            case NAIF:
+                return new DefaultQueryRouter(ressources.contentRetriever(RessourcesPartagees.DOCUMENT_RAG));
+
+            case ROUTAGE: {
+                ContentRetriever retrieverRAG = ressources.contentRetriever(RessourcesPartagees.DOCUMENT_RAG);
+                ContentRetriever retrieverCyber = ressources.contentRetriever(RessourcesPartagees.DOCUMENT_CYBER);
+
+                Map<ContentRetriever, String> retrieverDescriptions = new HashMap<>();
+                retrieverDescriptions.put(retrieverRAG,
+                        "Documents techniques sur l'intelligence artificielle, le RAG (Retrieval-Augmented Generation), " +
+                        "LangChain4j, les modèles de langage (LLM), les embeddings, les techniques avancées de RAG, " +
+                        "le machine learning, les agents IA, et les réseaux de neurones");
+                retrieverDescriptions.put(retrieverCyber,
+                        "Documents sur la cybersécurité, la sécurité informatique, les menaces cyber, " +
+                        "la protection des données, les attaques informatiques, les pare-feu, " +
+                        "le chiffrement, et les bonnes pratiques de sécurité");
+                return speculatif(new LanguageModelQueryRouter(modeleRoutage, retrieverDescriptions),
+                        List.of(retrieverRAG, retrieverCyber));
+            }
+
+            case CONDITIONNEL: {
+                ContentRetriever retrieverRAG = ressources.contentRetriever(RessourcesPartagees.DOCUMENT_RAG);
+                return speculatif(new RouteurConditionnel(modeleRoutage, retrieverRAG), List.of(retrieverRAG));
+            }
+
+            case WEB: {
+                if (webSearchEngine == null) {
+                    throw new IllegalStateException("Le mode web nécessite la variable d'environnement TAVILY_API_KEY.");
+                }
+                ContentRetriever webSearchRetriever = WebSearchContentRetriever.builder()
+                        .webSearchEngine(webSearchEngine)
+                        .build();
+                return new DefaultQueryRouter(
+                        ressources.contentRetriever(RessourcesPartagees.DOCUMENT_RAG), webSearchRetriever);
+            }
+
+            default:
+                throw new IllegalArgumentException("Mode non pris en charge : " + mode);
+        }
+    }
+
+    private QueryRouter speculatif(QueryRouter queryRouter, List<ContentRetriever> candidats) {
+        return routageSpeculatif ? new RoutageSpeculatif(queryRouter, candidats, executorRecherche) : queryRouter;
+    }
+
+    private static ThreadFactory fabriqueThreads(String nom) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, nom);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Construit le modèle Gemini à partir des variables d'environnement
+     *
+     * @return Le modèle, ou null si GEMINI_KEY n'est pas définie
+     */
+    public static ChatLanguageModel creerGemini() {
+        String geminiApiKey = System.getenv("GEMINI_KEY");
+        if (geminiApiKey == null || geminiApiKey.isEmpty()) {
+            return null;
+        }
+
+        String modelName = System.getenv("GEMINI_MODEL");
+        if (modelName == null || modelName.isBlank()) {
+            modelName = "gemini-2.5-flash";
+        }
+
+        return GoogleAiGeminiChatModel.builder()
+                .apiKey(geminiApiKey)
+                .modelName(modelName)
+                .temperature(0.7)
+                .maxOutputTokens(1024)
+                .timeout(Duration.ofSeconds(120))
+                .build();
+    }
+
+    /**
+     * Construit le moteur de recherche Tavily à partir des variables d'environnement
+     *
+     * @return Le moteur, ou null si TAVILY_API_KEY n'est pas définie
+     */
+    public static WebSearchEngine creerTavily() {
+        String tavilyApiKey = System.getenv("TAVILY_API_KEY");
+        if (tavilyApiKey == null || tavilyApiKey.isEmpty()) {
+            return null;
+        }
+        return TavilyWebSearchEngine.builder()
+                .apiKey(tavilyApiKey)
+                .build();
+    }
+
+    public static void main(String[] args) {
+        ChatLanguageModel gemini = creerGemini();
+        if (gemini == null) {
+            System.err.println("Erreur : La variable d'environnement GEMINI_KEY n'est pas définie.");
+            return;
+        }
+
+        // Limite adaptative des appels simultanés à Gemini pour rester sous le quota
+        ChatModelLimite chatModel = ChatModelLimite.builder(gemini).build();
+
+        WebSearchEngine webSearchEngine = creerTavily();
+        if (webSearchEngine == null) {
+            System.out.println("TAVILY_API_KEY non définie : le mode web est désactivé.");
+        }
+
+        MoteurRag moteur = new MoteurRag(new RessourcesPartagees(), chatModel, webSearchEngine);
+
+        // Une conversation (et donc une mémoire) par mode, toutes sur les mêmes ressources
+        Map<ModePipeline, Assistant> assistants = new EnumMap<>(ModePipeline.class);
+        ModePipeline mode = args.length > 0 ? ModePipeline.depuisNom(args[0]) : ModePipeline.NAIF;
+
+        System.out.println("=== Moteur RAG multi-modes ===");
+        for (ModePipeline m : ModePipeline.values()) {
+            System.out.println("  " + m.nom() + " : " + m.description());
+        }
+        System.out.println("Tapez '/mode <nom>' pour changer de mode, '/stats' pour l'état du limiteur, " +
+                "'quitter' ou 'exit' pour terminer\n");
+
+        Scanner scanner = new Scanner(System.in);
+
+        while (true) {
+            System.out.print("[" + mode.nom() + "] Votre question : ");
+            String question = scanner.nextLine().trim();
+
+            if (question.equalsIgnoreCase("quitter") || question.equalsIgnoreCase("exit")) {
+                System.out.println("\nAu revoir !");
+                break;
+            }
+
+            if (question.isEmpty()) {
+                continue;
+            }
+
+            try {
+                if (question.startsWith("/mode")) {
+                    mode = ModePipeline.depuisNom(question.substring("/mode".length()));
+                    System.out.println("Mode actif : " + mode.description() + "\n");
+                    continue;
+                }
+                if (question.equals("/stats")) {
+                    System.out.println("Limiteur Gemini : " + chatModel.metriques() + "\n");
+                    continue;
+                }
+
+                Assistant assistant = assistants.computeIfAbsent(mode,
+                        m -> moteur.nouvelleSession(m, moteur.nouvelleMemoire()));
+                String reponse = assistant.chat(question);
+                System.out.println("\nRéponse : " + reponse + "\n");
+            } catch (Exception e) {
+                System.err.println("Erreur : " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+        scanner.close();
+    }
+}
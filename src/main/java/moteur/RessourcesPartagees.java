@@ -0,0 +1,246 @@
+package moteur;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentParser;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
+import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
+import dev.langchain4j.store.embedding.filter.Filter;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import stockage.AttributsSegment;
+import stockage.EmbeddingStoreIndexe;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+
+/**
+ * Ressources chargées une seule fois par le moteur et partagées par tous les modes :
+ * le modèle d'embedding ONNX, le parser, le splitter et l'index des documents.
+ * Un document n'est ingéré qu'à sa première utilisation, quel que soit le nombre
+ * de modes qui l'interrogent.
+ *
+ * Tous les documents vont dans un seul {@link EmbeddingStoreIndexe} ; chaque segment
+ * porte l'identifiant de son document, sa source, sa page et sa section (voir {@link AttributsSegment}),
+ * et les retrievers restreignent leur recherche par un Filter résolu sur l'index des métadonnées.
+ *
+ * Les PDF sont lus page par page avec PDFBox, sans passer par le parser fourni au constructeur ;
+ * celui-ci ne sert que pour les autres formats. Redéfinir {@link #chargerPages(Path)} pour changer
+ * l'extraction des PDF.
+ * Les segments quasi identiques (en-têtes, pieds de page...) sont retirés avant le calcul
+ * des embeddings (voir {@link DedoublonnageMinHash}). Tous les retrievers partagent l'embedding
+ * de chaque requête (voir {@link EmbeddingRequetesPartagees}).
+ */
+public class RessourcesPartagees {
+
+    public static final Path DOCUMENT_RAG = Paths.get("src/main/resources/support_rag.pdf");
+    public static final Path DOCUMENT_CYBER = Paths.get(
+            "src/main/resources/Introduction to Cybersecurity v3.0 - Module1 - Introduction à la cybersécurité.pdf");
+
+    private static final int LONGUEUR_MAX_SECTION = 80;
+
+    private final EmbeddingModel embeddingModel;
+    private final EmbeddingModel embeddingRequetes;
+    private final DocumentParser parser;
+    private final DocumentSplitter splitter;
+    private final EmbeddingStoreIndexe embeddingStore = new EmbeddingStoreIndexe();
+    private final Map<Path, Boolean> documentsIngeres = new ConcurrentHashMap<>();
+    private final DedoublonnageMinHash dedoublonnage = new DedoublonnageMinHash();
+    private final Map<String, List<Metadata>> doublonsParSegment = new ConcurrentHashMap<>();
+
+    public RessourcesPartagees() {
+        this(new AllMiniLmL6V2EmbeddingModel(), new ApacheTikaDocumentParser(), DocumentSplitters.recursive(300, 30));
+    }
+
+    public RessourcesPartagees(EmbeddingModel embeddingModel, DocumentParser parser, DocumentSplitter splitter) {
+        this.embeddingModel = embeddingModel;
+        this.embeddingRequetes = new EmbeddingRequetesPartagees(embeddingModel);
+        this.parser = parser;
+        this.splitter = splitter;
+    }
+
+    public EmbeddingModel embeddingModel() {
+        return embeddingModel;
+    }
+
+    public EmbeddingStoreIndexe embeddingStore() {
+        return embeddingStore;
+    }
+
+    /**
+     * Ingère un document dans le store partagé s'il ne l'a pas déjà été
+     *
+     * @param documentPath Chemin vers le document
+     */
+    public void ingerer(Path documentPath) {
+        documentsIngeres.computeIfAbsent(documentPath.toAbsolutePath().normalize(), path -> {
+            ingestDocument(path);
+            return Boolean.TRUE;
+        });
+    }
+
+    /**
+     * Crée un ContentRetriever limité aux segments d'un document
+     *
+     * @param documentPath Chemin vers le document
+     * @return ContentRetriever configuré comme dans les tests 1 à 5
+     */
+    public ContentRetriever contentRetriever(Path documentPath) {
+        ingerer(documentPath);
+        return contentRetriever(metadataKey(AttributsSegment.DOCUMENT).isEqualTo(identifiantDocument(documentPath)));
+    }
+
+    /**
+     * Crée un ContentRetriever sur le store partagé, restreint par un filtre sur les métadonnées.
+     * Les documents concernés doivent avoir été ingérés au préalable.
+     *
+     * @param filter Filtre sur les attributs de {@link AttributsSegment}, ou null pour tout le store
+     * @return ContentRetriever configuré comme dans les tests 1 à 5
+     */
+    public ContentRetriever contentRetriever(Filter filter) {
+        return EmbeddingStoreContentRetriever.builder()
+                .embeddingStore(embeddingStore)
+                .embeddingModel(embeddingRequetes)
+                .maxResults(2)
+                .minScore(0.5)
+                .filter(filter)
+                .build();
+    }
+
+    private void ingestDocument(Path documentPath) {
+        System.out.println("Ingestion du document : " + documentPath.getFileName());
+
+        List<TextSegment> segments = new ArrayList<>();
+        for (Document page : chargerPages(documentPath)) {
+            segments.addAll(splitter.split(page));
+        }
+        System.out.println("  - " + segments.size() + " segments créés");
+
+        DedoublonnageMinHash.Resultat dedoublonne = dedoublonnage.dedoublonner(segments);
+        segments = dedoublonne.conserves();
+        System.out.println("  - " + dedoublonne.nombreRetires() + " segments quasi identiques retirés");
+
+        List<Embedding> embeddings = embeddingModel.embedAll(segments).content();
+        System.out.println("  - " + embeddings.size() + " embeddings générés");
+
+        // Seules les métadonnées des occurrences retirées sont gardées, pas leurs textes
+        List<List<Metadata>> occurrences = new ArrayList<>();
+        for (TextSegment segment : segments) {
+            List<Metadata> retires = new ArrayList<>();
+            for (TextSegment retire : dedoublonne.doublons().getOrDefault(segment, List.of())) {
+                retires.add(occurrence(retire));
+            }
+            occurrences.add(retires);
+        }
+        List<String> ids = embeddingStore.ajouterDedoublonnes(embeddings, segments, occurrences);
+        for (int i = 0; i < segments.size(); i++) {
+            if (!occurrences.get(i).isEmpty()) {
+                doublonsParSegment.put(ids.get(i), occurrences.get(i));
+            }
+        }
+        System.out.printf("  - textes stockés hors tas, taux de compression %.2f%n", embeddingStore.tauxCompression());
+    }
+
+    /**
+     * Retrouve les occurrences retirées à l'ingestion au profit d'un segment conservé,
+     * par exemple pour citer toutes les pages où figure un passage répété
+     *
+     * @param idSegment Identifiant du segment dans le store ({@code EmbeddingMatch.embeddingId()})
+     * @return Document, page et section de chaque occurrence retirée, ou une liste vide
+     */
+    public List<Metadata> doublons(String idSegment) {
+        return doublonsParSegment.getOrDefault(idSegment, List.of());
+    }
+
+    private static Metadata occurrence(TextSegment retire) {
+        Map<String, Object> attributs = retire.metadata().toMap();
+        Map<String, Object> occurrence = new HashMap<>();
+        for (String attribut : List.of(AttributsSegment.DOCUMENT, AttributsSegment.PAGE, AttributsSegment.SECTION)) {
+            if (attributs.containsKey(attribut)) {
+                occurrence.put(attribut, attributs.get(attribut));
+            }
+        }
+        return Metadata.from(occurrence);
+    }
+
+    /**
+     * Identifiant stable d'un document : son chemin absolu normalisé.
+     * Deux fichiers de même nom dans des répertoires différents restent ainsi distincts.
+     */
+    public static String identifiantDocument(Path documentPath) {
+        return documentPath.toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * Charge un document page par page pour que chaque segment connaisse sa page et sa section.
+     * Les PDF sont lus avec PDFBox ; les autres fichiers sont chargés d'un bloc avec le parser,
+     * sans numéro de page. Chaque page doit porter au moins {@link AttributsSegment#DOCUMENT}
+     * et {@link AttributsSegment#SOURCE}.
+     *
+     * @param documentPath Chemin absolu normalisé du document
+     * @return Les pages du document
+     */
+    protected List<Document> chargerPages(Path documentPath) {
+        String document = identifiantDocument(documentPath);
+        String source = documentPath.getFileName().toString();
+        List<Document> pages = new ArrayList<>();
+
+        if (!source.toLowerCase().endsWith(".pdf")) {
+            Document texte = FileSystemDocumentLoader.loadDocument(documentPath, parser);
+            texte.metadata().put(AttributsSegment.DOCUMENT, document);
+            texte.metadata().put(AttributsSegment.SOURCE, source);
+            pages.add(texte);
+            return pages;
+        }
+
+        try (PDDocument pdf = Loader.loadPDF(documentPath.toFile())) {
+            PDFTextStripper stripper = new PDFTextStripper();
+            for (int numero = 1; numero <= pdf.getNumberOfPages(); numero++) {
+                stripper.setStartPage(numero);
+                stripper.setEndPage(numero);
+                String texte = stripper.getText(pdf);
+                if (texte.isBlank()) {
+                    continue;
+                }
+
+                Metadata metadata = new Metadata();
+                metadata.put(AttributsSegment.DOCUMENT, document);
+                metadata.put(AttributsSegment.SOURCE, source);
+                metadata.put(AttributsSegment.PAGE, numero);
+                metadata.put(AttributsSegment.SECTION, section(texte));
+                pages.add(Document.from(texte, metadata));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Impossible de lire " + documentPath, e);
+        }
+        return pages;
+    }
+
+    private static String section(String textePage) {
+        for (String ligne : textePage.split("\\R")) {
+            String titre = ligne.trim();
+            if (!titre.isEmpty()) {
+                return titre.length() > LONGUEUR_MAX_SECTION ? titre.substring(0, LONGUEUR_MAX_SECTION) : titre;
+            }
+        }
+        return "";
+    }
+}
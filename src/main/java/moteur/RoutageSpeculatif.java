@@ -0,0 +1,108 @@
+package moteur;
+
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.rag.query.router.QueryRouter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * QueryRouter qui lance les recherches locales en même temps que la décision de routage.
+ * Pendant que le routeur délégué interroge le LLM, chaque retriever candidat cherche déjà
+ * dans l'index ; une fois la décision connue, les résultats des retrievers choisis sont
+ * réutilisés et ceux des autres sont abandonnés. La recherche sort ainsi du chemin critique.
+ * Seuls des retrievers peu coûteux (index en mémoire) doivent être passés comme candidats.
+ *
+ * Une recherche abandonnée qui n'a pas encore démarré n'est jamais exécutée ; une recherche
+ * déjà en cours va à son terme. L'executor doit donc être borné (un thread par cœur) :
+ * quand il est saturé, la spéculation est simplement sautée.
+ */
+public class RoutageSpeculatif implements QueryRouter {
+
+    private final QueryRouter delegate;
+    private final Collection<ContentRetriever> candidats;
+    private final Executor executor;
+
+    /**
+     * @param delegate Routeur qui prend la décision (LLM)
+     * @param candidats Retrievers à lancer par anticipation
+     * @param executor Executor des recherches anticipées
+     */
+    public RoutageSpeculatif(QueryRouter delegate, Collection<ContentRetriever> candidats, Executor executor) {
+        this.delegate = delegate;
+        this.candidats = candidats;
+        this.executor = executor;
+    }
+
+    @Override
+    public Collection<ContentRetriever> route(Query query) {
+        Map<ContentRetriever, CompletableFuture<List<Content>>> speculations = new IdentityHashMap<>();
+        for (ContentRetriever candidat : candidats) {
+            try {
+                speculations.put(candidat, CompletableFuture.supplyAsync(() -> candidat.retrieve(query), executor));
+            } catch (RejectedExecutionException e) {
+                // Executor saturé : ce candidat sera cherché normalement s'il est choisi
+            }
+        }
+
+        Collection<ContentRetriever> choisis;
+        try {
+            choisis = delegate.route(query);
+        } catch (RuntimeException e) {
+            speculations.values().forEach(speculation -> speculation.cancel(false));
+            throw e;
+        }
+
+        List<ContentRetriever> retrievers = new ArrayList<>();
+        for (ContentRetriever choisi : choisis) {
+            CompletableFuture<List<Content>> speculation = speculations.remove(choisi);
+            retrievers.add(speculation == null ? choisi : new ResultatAnticipe(choisi, query, speculation));
+        }
+
+        // Les recherches des sources écartées sont abandonnées
+        speculations.values().forEach(speculation -> speculation.cancel(false));
+        return retrievers;
+    }
+
+    /**
+     * ContentRetriever qui renvoie le résultat de la recherche anticipée,
+     * ou relance la recherche si la requête a été transformée entre-temps
+     */
+    private static class ResultatAnticipe implements ContentRetriever {
+
+        private final ContentRetriever retriever;
+        private final Query query;
+        private final CompletableFuture<List<Content>> speculation;
+
+        ResultatAnticipe(ContentRetriever retriever, Query query, CompletableFuture<List<Content>> speculation) {
+            this.retriever = retriever;
+            this.query = query;
+            this.speculation = speculation;
+        }
+
+        @Override
+        public List<Content> retrieve(Query requete) {
+            if (!requete.text().equals(query.text())) {
+                speculation.cancel(false);
+                return retriever.retrieve(requete);
+            }
+            try {
+                return speculation.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+    }
+}
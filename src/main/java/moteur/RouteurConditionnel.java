@@ -0,0 +1,48 @@
+package moteur;
+
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.input.Prompt;
+import dev.langchain4j.model.input.PromptTemplate;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.rag.query.router.QueryRouter;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * QueryRouter du test 4 : demande au LLM si la question porte sur l'IA
+ * et n'active le RAG que pour "oui" ou "peut-être".
+ */
+public class RouteurConditionnel implements QueryRouter {
+
+    private static final PromptTemplate PROMPT_TEMPLATE = PromptTemplate.from(
+            "Est-ce que la requête '{{question}}' porte sur l'intelligence artificielle, " +
+            "le RAG, les embeddings, les modèles de langage ou des sujets techniques liés à l'IA ? " +
+            "Réponds seulement par 'oui', 'non' ou 'peut-être'."
+    );
+
+    private final ChatLanguageModel chatModel;
+    private final ContentRetriever contentRetriever;
+
+    public RouteurConditionnel(ChatLanguageModel chatModel, ContentRetriever contentRetriever) {
+        this.chatModel = chatModel;
+        this.contentRetriever = contentRetriever;
+    }
+
+    @Override
+    public Collection<ContentRetriever> route(Query query) {
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("question", query.text());
+        Prompt prompt = PROMPT_TEMPLATE.apply(variables);
+
+        String answer = chatModel.generate(prompt.text()).trim().toLowerCase();
+
+        if (answer.contains("oui") || answer.contains("peut-être") || answer.contains("peut-etre")) {
+            return Collections.singletonList(contentRetriever);
+        }
+        return Collections.emptyList();
+    }
+}
@@ -0,0 +1,32 @@
+package stockage;
+
+/**
+ * Noms des métadonnées attachées à chaque segment lors de l'ingestion,
+ * utilisables dans un Filter (par exemple {@code metadataKey(PAGE).isEqualTo(3)}).
+ */
+public final class AttributsSegment {
+
+    /** Identifiant du document : chemin absolu normalisé, clé de filtrage par document */
+    public static final String DOCUMENT = "document";
+
+    /** Nom du fichier d'origine, pour l'affichage */
+    public static final String SOURCE = "source";
+
+    /** Numéro de page (à partir de 1) */
+    public static final String PAGE = "page";
+
+    /** Titre de section : première ligne non vide de la page */
+    public static final String SECTION = "section";
+
+    /** Nombre de segments quasi identiques retirés à l'ingestion au profit de celui-ci */
+    public static final String DOUBLONS = "doublons";
+
+    /**
+     * Pages des segments retirés, séparées par des virgules, pour l'affichage.
+     * Non indexé : un filtre sur {@link #PAGE} retrouve déjà le segment conservé par ces pages.
+     */
+    public static final String PAGES_DOUBLONS = "pages_doublons";
+
+    private AttributsSegment() {
+    }
+}
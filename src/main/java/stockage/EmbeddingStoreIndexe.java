@@ -0,0 +1,270 @@
+package stockage;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.CosineSimilarity;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * EmbeddingStore en mémoire qui indexe les métadonnées des segments (source, page, section...).
+ * Contrairement à InMemoryEmbeddingStore, le {@link Filter} de la requête est d'abord résolu
+ * sur l'index des métadonnées : seuls les vecteurs autorisés par le filtre sont comparés à la requête.
+ * Un seul store peut ainsi servir plusieurs documents, chaque recherche ciblée ne touchant
+ * que les segments de son périmètre.
+ *
+ * Les textes des segments sont gardés compressés hors du tas (voir {@link TextesHorsTas}) ;
+ * seules leurs métadonnées restent sur le tas. Un TextSegment n'est reconstruit que pour
+ * les résultats renvoyés par une recherche.
+ *
+ * Un segment conservé au profit de doublons retirés à l'ingestion peut être ajouté avec les métadonnées
+ * de ces occurrences (voir {@link #ajouterDedoublonnes}) : un filtre sur la page ou la section
+ * d'une occurrence retirée retrouve alors le segment conservé.
+ */
+public class EmbeddingStoreIndexe implements EmbeddingStore<TextSegment> {
+
+    private final List<String> ids = new ArrayList<>();
+    private final List<Embedding> embeddings = new ArrayList<>();
+    private final List<Metadata> metadatas = new ArrayList<>();
+    private final List<Integer> idsTextes = new ArrayList<>();
+    private final Map<Integer, List<Metadata>> occurrencesRetirees = new HashMap<>();
+    private final TextesHorsTas textes = new TextesHorsTas();
+    private final IndexAttributs indexAttributs = new IndexAttributs();
+    private final ReadWriteLock verrou = new ReentrantReadWriteLock();
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        ajouter(id, embedding, null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment segment) {
+        String id = UUID.randomUUID().toString();
+        ajouter(id, embedding, segment);
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> nouveauxIds = new ArrayList<>();
+        for (Embedding embedding : embeddings) {
+            nouveauxIds.add(add(embedding));
+        }
+        return nouveauxIds;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> segments) {
+        List<String> nouveauxIds = new ArrayList<>();
+        for (int i = 0; i < embeddings.size(); i++) {
+            nouveauxIds.add(UUID.randomUUID().toString());
+        }
+        addAll(nouveauxIds, embeddings, segments);
+        return nouveauxIds;
+    }
+
+    public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> segments) {
+        if (ids.size() != embeddings.size() || (segments != null && segments.size() != embeddings.size())) {
+            throw new IllegalArgumentException("Les listes d'ids, d'embeddings et de segments doivent avoir la même taille");
+        }
+        verrou.writeLock().lock();
+        try {
+            for (int i = 0; i < embeddings.size(); i++) {
+                ajouterSansVerrou(ids.get(i), embeddings.get(i), segments == null ? null : segments.get(i), List.of());
+            }
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Ajoute des segments dédoublonnés. Chaque segment est aussi indexé sous les attributs
+     * (page, section...) des occurrences retirées à son profit.
+     *
+     * @param occurrences Pour chaque segment, les métadonnées des occurrences retirées, ou une liste vide
+     * @return Les identifiants des segments ajoutés
+     */
+    public List<String> ajouterDedoublonnes(List<Embedding> embeddings, List<TextSegment> segments,
+                                            List<List<Metadata>> occurrences) {
+        if (segments.size() != embeddings.size() || occurrences.size() != embeddings.size()) {
+            throw new IllegalArgumentException("Les listes d'embeddings, de segments et d'occurrences doivent avoir la même taille");
+        }
+        List<String> nouveauxIds = new ArrayList<>();
+        verrou.writeLock().lock();
+        try {
+            for (int i = 0; i < embeddings.size(); i++) {
+                String id = UUID.randomUUID().toString();
+                ajouterSansVerrou(id, embeddings.get(i), segments.get(i), occurrences.get(i));
+                nouveauxIds.add(id);
+            }
+        } finally {
+            verrou.writeLock().unlock();
+        }
+        return nouveauxIds;
+    }
+
+    private void ajouter(String id, Embedding embedding, TextSegment segment) {
+        verrou.writeLock().lock();
+        try {
+            ajouterSansVerrou(id, embedding, segment, List.of());
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    private void ajouterSansVerrou(String id, Embedding embedding, TextSegment segment, List<Metadata> occurrences) {
+        int position = ids.size();
+        ids.add(id);
+        embeddings.add(embedding);
+        if (segment == null) {
+            metadatas.add(null);
+            idsTextes.add(-1);
+        } else {
+            metadatas.add(segment.metadata());
+            idsTextes.add(textes.ajouter(segment.text()));
+            indexAttributs.ajouter(position, segment.metadata());
+            for (Metadata occurrence : occurrences) {
+                indexAttributs.ajouter(position, occurrence);
+            }
+            if (!occurrences.isEmpty()) {
+                occurrencesRetirees.put(position, occurrences);
+            }
+        }
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        Comparator<Candidat> parScore = Comparator.comparingDouble(Candidat::score);
+        PriorityQueue<Candidat> meilleurs = new PriorityQueue<>(parScore);
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>();
+
+        verrou.readLock().lock();
+        try {
+            int taille = ids.size();
+            Filter filter = request.filter();
+            BitSet candidats;
+            boolean aVerifier;
+            if (filter == null) {
+                candidats = new BitSet(taille);
+                candidats.set(0, taille);
+                aVerifier = false;
+            } else {
+                IndexAttributs.Candidats resultat = indexAttributs.evaluer(filter, taille);
+                candidats = resultat.positions();
+                aVerifier = !resultat.exact();
+            }
+
+            for (int i = candidats.nextSetBit(0); i >= 0 && i < taille; i = candidats.nextSetBit(i + 1)) {
+                if (aVerifier && !accepte(filter, i)) {
+                    continue;
+                }
+
+                double cosinus = CosineSimilarity.between(embeddings.get(i), request.queryEmbedding());
+                double score = RelevanceScore.fromCosineSimilarity(cosinus);
+                if (score < request.minScore()) {
+                    continue;
+                }
+
+                meilleurs.add(new Candidat(i, score));
+                if (meilleurs.size() > request.maxResults()) {
+                    meilleurs.poll();
+                }
+            }
+
+            // Seuls les textes des résultats retenus sont décompressés
+            List<Candidat> retenus = new ArrayList<>(meilleurs);
+            retenus.sort(parScore.reversed());
+            for (Candidat candidat : retenus) {
+                int i = candidat.position();
+                int idTexte = idsTextes.get(i);
+                TextSegment segment = idTexte < 0 ? null : TextSegment.from(textes.lire(idTexte), metadatas.get(i));
+                matches.add(new EmbeddingMatch<>(candidat.score(), ids.get(i), embeddings.get(i), segment));
+            }
+        } finally {
+            verrou.readLock().unlock();
+        }
+
+        return new EmbeddingSearchResult<>(matches);
+    }
+
+    /**
+     * Revérifie un filtre sur un segment et sur les occurrences retirées à son profit
+     */
+    private boolean accepte(Filter filter, int position) {
+        Metadata metadata = metadatas.get(position);
+        if (metadata == null) {
+            return false;
+        }
+        if (filter.test(metadata)) {
+            return true;
+        }
+        for (Metadata occurrence : occurrencesRetirees.getOrDefault(position, List.of())) {
+            if (filter.test(occurrence)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Taux de compression des textes (octets stockés / octets d'origine)
+     */
+    public double tauxCompression() {
+        verrou.readLock().lock();
+        try {
+            return textes.tauxCompression();
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Mémoire directe réservée pour les textes, en octets
+     */
+    public long octetsHorsTas() {
+        verrou.readLock().lock();
+        try {
+            return textes.octetsHorsTas();
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Nombre de segments stockés
+     */
+    public int taille() {
+        verrou.readLock().lock();
+        try {
+            return ids.size();
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    private record Candidat(int position, double score) {
+    }
+}
@@ -0,0 +1,174 @@
+package stockage;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.store.embedding.filter.Filter;
+import dev.langchain4j.store.embedding.filter.comparison.IsEqualTo;
+import dev.langchain4j.store.embedding.filter.comparison.IsIn;
+import dev.langchain4j.store.embedding.filter.logical.And;
+import dev.langchain4j.store.embedding.filter.logical.Not;
+import dev.langchain4j.store.embedding.filter.logical.Or;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index des métadonnées des segments : pour chaque attribut indexé et chaque valeur,
+ * l'ensemble des positions des segments qui portent cette valeur.
+ * Un {@link Filter} est traduit en opérations sur des bitmaps avant tout calcul de similarité.
+ *
+ * Seuls les attributs de filtrage de {@link AttributsSegment} (document, source, page, section)
+ * sont indexés ; les autres métadonnées (index du splitter, clés Tika...) ne coûtent rien à l'index.
+ * Les positions d'une valeur rare sont gardées en liste triée ; une valeur fréquente passe en bitmap.
+ *
+ * Les filtres d'égalité ({@link IsEqualTo}, {@link IsIn}) sur un attribut indexé et leurs
+ * combinaisons ({@link And}, {@link Or}, {@link Not}) sont évalués exactement ; les autres
+ * (attribut non indexé, comparaisons d'ordre, contient...) donnent un sur-ensemble qu'il faut revérifier.
+ * Cette classe n'est pas thread-safe : l'accès est synchronisé par le store.
+ */
+class IndexAttributs {
+
+    private static final Set<String> ATTRIBUTS_INDEXES = Set.of(
+            AttributsSegment.DOCUMENT, AttributsSegment.SOURCE, AttributsSegment.PAGE, AttributsSegment.SECTION);
+
+    /**
+     * Résultat de l'évaluation d'un filtre
+     *
+     * @param positions Positions candidates
+     * @param exact true si les positions correspondent exactement au filtre,
+     *              false s'il s'agit d'un sur-ensemble à revérifier
+     */
+    record Candidats(BitSet positions, boolean exact) {
+    }
+
+    private final Map<String, Map<Object, Positions>> index = new HashMap<>();
+
+    /**
+     * Indexe les attributs d'un segment. Les positions doivent être ajoutées par ordre croissant.
+     */
+    void ajouter(int position, Metadata metadata) {
+        Map<String, Object> attributs = metadata.toMap();
+        for (String attribut : ATTRIBUTS_INDEXES) {
+            Object valeur = attributs.get(attribut);
+            if (valeur != null) {
+                index.computeIfAbsent(attribut, k -> new HashMap<>())
+                        .computeIfAbsent(normaliser(valeur), v -> new Positions())
+                        .ajouter(position);
+            }
+        }
+    }
+
+    /**
+     * Évalue un filtre sur les bitmaps
+     *
+     * @param filter Filtre à évaluer
+     * @param taille Nombre de segments dans le store
+     * @return Les positions candidates
+     */
+    Candidats evaluer(Filter filter, int taille) {
+        if (filter instanceof IsEqualTo isEqualTo && ATTRIBUTS_INDEXES.contains(isEqualTo.key())) {
+            BitSet positions = new BitSet(taille);
+            ajouterPositions(positions, isEqualTo.key(), isEqualTo.comparisonValue());
+            return new Candidats(positions, true);
+        }
+        if (filter instanceof IsIn isIn && ATTRIBUTS_INDEXES.contains(isIn.key())) {
+            BitSet positions = new BitSet(taille);
+            for (Object valeur : isIn.comparisonValues()) {
+                ajouterPositions(positions, isIn.key(), valeur);
+            }
+            return new Candidats(positions, true);
+        }
+        if (filter instanceof And and) {
+            Candidats gauche = evaluer(and.left(), taille);
+            Candidats droite = evaluer(and.right(), taille);
+            gauche.positions().and(droite.positions());
+            return new Candidats(gauche.positions(), gauche.exact() && droite.exact());
+        }
+        if (filter instanceof Or or) {
+            Candidats gauche = evaluer(or.left(), taille);
+            Candidats droite = evaluer(or.right(), taille);
+            gauche.positions().or(droite.positions());
+            return new Candidats(gauche.positions(), gauche.exact() && droite.exact());
+        }
+        if (filter instanceof Not not) {
+            Candidats interieur = evaluer(not.expression(), taille);
+            if (!interieur.exact()) {
+                // Le complément d'un sur-ensemble n'est pas un sur-ensemble
+                return tout(taille);
+            }
+            interieur.positions().flip(0, taille);
+            return new Candidats(interieur.positions(), true);
+        }
+        return tout(taille);
+    }
+
+    private void ajouterPositions(BitSet positions, String attribut, Object valeur) {
+        Positions indexees = index.getOrDefault(attribut, Map.of()).get(normaliser(valeur));
+        if (indexees != null) {
+            indexees.ajouterA(positions);
+        }
+    }
+
+    private static Candidats tout(int taille) {
+        BitSet positions = new BitSet(taille);
+        positions.set(0, taille);
+        return new Candidats(positions, false);
+    }
+
+    /**
+     * Ramène les nombres à une forme canonique pour que 3, 3L et 3.0 tombent dans le même bitmap
+     */
+    private static Object normaliser(Object valeur) {
+        if (valeur instanceof Number nombre) {
+            return new BigDecimal(nombre.toString()).stripTrailingZeros();
+        }
+        return valeur;
+    }
+
+    /**
+     * Positions des segments qui portent une valeur. Liste triée tant qu'elle est plus compacte
+     * qu'un bitmap (moins d'une position sur 32), bitmap ensuite.
+     */
+    private static final class Positions {
+
+        private int[] liste = new int[2];
+        private int taille;
+        private BitSet bitmap;
+
+        void ajouter(int position) {
+            if (bitmap != null) {
+                bitmap.set(position);
+                return;
+            }
+            if (taille > 0 && liste[taille - 1] == position) {
+                return;
+            }
+            if (taille == liste.length) {
+                if ((long) taille * Integer.SIZE >= position) {
+                    bitmap = new BitSet(position + 1);
+                    for (int i = 0; i < taille; i++) {
+                        bitmap.set(liste[i]);
+                    }
+                    bitmap.set(position);
+                    liste = null;
+                    return;
+                }
+                liste = Arrays.copyOf(liste, taille * 2);
+            }
+            liste[taille++] = position;
+        }
+
+        void ajouterA(BitSet positions) {
+            if (bitmap != null) {
+                positions.or(bitmap);
+                return;
+            }
+            for (int i = 0; i < taille; i++) {
+                positions.set(liste[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package stockage;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Stockage compressé des textes de segments hors du tas Java.
+ * Les textes sont compressés (Deflate) puis copiés dans des blocs de mémoire directe ;
+ * seul un petit index (bloc, position, longueurs) reste sur le tas. Un texte n'est
+ * décompressé que lorsqu'il est lu, c'est-à-dire pour les résultats d'une recherche.
+ *
+ * Les ajouts doivent être sérialisés par l'appelant ; les lectures peuvent être concurrentes
+ * entre elles, mais pas avec un ajout.
+ */
+class TextesHorsTas {
+
+    private static final int TAILLE_BLOC = 4 * 1024 * 1024;
+
+    private final List<ByteBuffer> blocs = new ArrayList<>();
+    private int[] blocParTexte = new int[1024];
+    private int[] positionParTexte = new int[1024];
+    private int[] longueurStockee = new int[1024];
+    private int[] longueurTexte = new int[1024];
+    private int nombreTextes;
+    private long octetsStockes;
+    private long octetsTextes;
+
+    /**
+     * Ajoute un texte
+     *
+     * @param texte Texte à stocker
+     * @return Identifiant du texte, à passer à {@link #lire(int)}
+     */
+    int ajouter(String texte) {
+        byte[] brut = texte.getBytes(StandardCharsets.UTF_8);
+        byte[] compresse = compresser(brut);
+        // Les segments très courts ne gagnent rien à la compression : ils sont stockés tels quels
+        byte[] stocke = compresse.length < brut.length ? compresse : brut;
+
+        ByteBuffer bloc = blocs.isEmpty() ? null : blocs.get(blocs.size() - 1);
+        if (bloc == null || bloc.remaining() < stocke.length) {
+            bloc = ByteBuffer.allocateDirect(Math.max(TAILLE_BLOC, stocke.length));
+            blocs.add(bloc);
+        }
+
+        int id = nombreTextes;
+        if (id == blocParTexte.length) {
+            int capacite = id * 2;
+            blocParTexte = Arrays.copyOf(blocParTexte, capacite);
+            positionParTexte = Arrays.copyOf(positionParTexte, capacite);
+            longueurStockee = Arrays.copyOf(longueurStockee, capacite);
+            longueurTexte = Arrays.copyOf(longueurTexte, capacite);
+        }
+        blocParTexte[id] = blocs.size() - 1;
+        positionParTexte[id] = bloc.position();
+        longueurStockee[id] = stocke.length;
+        longueurTexte[id] = brut.length;
+        bloc.put(stocke);
+
+        nombreTextes++;
+        octetsStockes += stocke.length;
+        octetsTextes += brut.length;
+        return id;
+    }
+
+    /**
+     * Lit et décompresse un texte
+     *
+     * @param id Identifiant renvoyé par {@link #ajouter(String)}
+     * @return Le texte d'origine
+     */
+    String lire(int id) {
+        byte[] stocke = new byte[longueurStockee[id]];
+        blocs.get(blocParTexte[id]).get(positionParTexte[id], stocke);
+
+        if (stocke.length == longueurTexte[id]) {
+            return new String(stocke, StandardCharsets.UTF_8);
+        }
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(stocke);
+            byte[] brut = new byte[longueurTexte[id]];
+            int lus = 0;
+            while (lus < brut.length) {
+                int n = inflater.inflate(brut, lus, brut.length - lus);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                lus += n;
+            }
+            return new String(brut, 0, lus, StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Texte " + id + " corrompu", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * @return Taux de compression (octets stockés / octets des textes)
+     */
+    double tauxCompression() {
+        return octetsTextes == 0 ? 1.0 : (double) octetsStockes / octetsTextes;
+    }
+
+    /**
+     * @return Mémoire directe réservée par les blocs, en octets
+     */
+    long octetsHorsTas() {
+        long total = 0;
+        for (ByteBuffer bloc : blocs) {
+            total += bloc.capacity();
+        }
+        return total;
+    }
+
+    private static byte[] compresser(byte[] brut) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(brut);
+            deflater.finish();
+            ByteArrayOutputStream sortie = new ByteArrayOutputStream(brut.length);
+            byte[] tampon = new byte[Math.max(64, brut.length)];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(tampon);
+                sortie.write(tampon, 0, n);
+            }
+            return sortie.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+}
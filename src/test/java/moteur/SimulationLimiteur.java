@@ -0,0 +1,150 @@
+package moteur;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+
+/**
+ * Simulation en temps virtuel de la loi de contrôle de {@link ChatModelLimite}.
+ * Des appels sont lancés tant que la limite le permet ; chaque fin d'appel est rejouée
+ * dans {@link ChatModelLimite#ajuster}. Aucun modèle n'est appelé et la graine est fixe :
+ * le résultat est reproductible et s'obtient en moins d'une seconde.
+ *
+ * Scénarios vérifiés (la limite est relevée à chaque fin d'appel à partir de l'instant indiqué) :
+ * <ul>
+ *     <li>latence indépendante de la charge, routages et générations mélangés : dès 60 s,
+ *     la limite reste au-dessus de 48 et finit au maximum (64) ;</li>
+ *     <li>latence qui croît au-delà de 8 appels simultanés : dès 60 s, la limite moyenne
+ *     reste entre 12 et 20, autour de 16 (latence doublée), et ne descend jamais sous 4 ;</li>
+ *     <li>quota de 16 appels simultanés (HTTP 429 au-delà) : dès 60 s, la limite moyenne
+ *     reste entre 10 et 18 et ne descend jamais sous 8, la moitié du quota ;</li>
+ *     <li>modèle durablement trois fois plus lent à 120 s, sans changement de charge :
+ *     une seule sonde divise la limite par deux (jamais sous 30) et la limite revient
+ *     au-dessus de 57 en moins de 20 s.</li>
+ * </ul>
+ * Le programme se termine avec le code 1 si un scénario échoue.
+ */
+public class SimulationLimiteur {
+
+    private static final double LIMITE_MAX = 64;
+    private static final int APPELS = 20_000;
+    private static final long MILLIS = 1_000_000L;
+    private static final long SECONDES = 1_000 * MILLIS;
+
+    /**
+     * Comportement du service simulé pour un appel
+     */
+    private interface Service {
+        Appel appeler(String type, int enCours, long debutNanos, SplittableRandom random);
+    }
+
+    private record Appel(String type, long finNanos, long latenceNanos, boolean quotaDepasse) {
+    }
+
+    /**
+     * Limite relevée à partir de l'instant de mesure
+     *
+     * @param retourNanos Durée entre le début de la mesure et le premier retour à 90 % du maximum
+     *                    après le point le plus bas, ou -1 si la limite n'y revient pas
+     */
+    private record Bilan(double limiteFinale, double limiteMoyenne, double limiteMinimale, long retourNanos) {
+    }
+
+    public static void main(String[] args) {
+        boolean succes = true;
+
+        Bilan independante = simuler(60 * SECONDES, (type, enCours, debut, random) ->
+                reussite(type, debut, latenceLogNormale(type, random)));
+        succes &= verifier("latence indépendante de la charge", independante,
+                independante.limiteMinimale() >= 48 && independante.limiteFinale() >= LIMITE_MAX * 0.9);
+
+        Bilan saturee = simuler(60 * SECONDES, (type, enCours, debut, random) ->
+                reussite(type, debut, (long) (latenceLogNormale(type, random) * Math.max(1.0, enCours / 8.0))));
+        succes &= verifier("latence croissante au-delà de 8 appels", saturee,
+                saturee.limiteMoyenne() >= 12 && saturee.limiteMoyenne() <= 20 && saturee.limiteMinimale() >= 4);
+
+        Bilan quota = simuler(60 * SECONDES, (type, enCours, debut, random) -> enCours > 16
+                ? new Appel(type, debut + 50 * MILLIS, 50 * MILLIS, true)
+                : reussite(type, debut, latenceLogNormale(type, random)));
+        succes &= verifier("quota de 16 appels simultanés", quota,
+                quota.limiteMoyenne() >= 10 && quota.limiteMoyenne() <= 18 && quota.limiteMinimale() >= 8);
+
+        Bilan ralenti = simuler(120 * SECONDES, (type, enCours, debut, random) ->
+                reussite(type, debut, latenceLogNormale(type, random) * (debut < 120 * SECONDES ? 1 : 3)));
+        succes &= verifier("ralentissement durable du modèle à 120 s", ralenti,
+                ralenti.limiteMinimale() >= 30 && ralenti.retourNanos() >= 0 && ralenti.retourNanos() <= 20 * SECONDES);
+
+        if (!succes) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Rejoue {@link #APPELS} appels, moitié routage moitié génération, en gardant toujours
+     * autant d'appels en cours que la limite le permet
+     *
+     * @param debutMesureNanos Instant simulé à partir duquel la limite est relevée
+     */
+    private static Bilan simuler(long debutMesureNanos, Service service) {
+        ChatModelLimite limiteur = ChatModelLimite.builder(null)
+                .limiteInitiale(4)
+                .limiteMax(LIMITE_MAX)
+                .build();
+        SplittableRandom random = new SplittableRandom(42);
+        PriorityQueue<Appel> enVol = new PriorityQueue<>(Comparator.comparingLong(Appel::finNanos));
+        long maintenant = 0;
+        double sommeLimites = 0;
+        int mesures = 0;
+        double limiteMinimale = Double.MAX_VALUE;
+        long retour = -1;
+
+        for (int termines = 0; termines < APPELS; termines++) {
+            while (enVol.size() < (int) limiteur.limite()) {
+                String type = random.nextBoolean() ? ChatModelLimite.TYPE_ROUTAGE : ChatModelLimite.TYPE_GENERATION;
+                enVol.add(service.appeler(type, enVol.size() + 1, maintenant, random));
+            }
+
+            int enCours = enVol.size();
+            Appel appel = enVol.poll();
+            maintenant = appel.finNanos();
+            limiteur.ajuster(appel.type(), appel.latenceNanos(), enCours, appel.quotaDepasse(), maintenant);
+
+            if (maintenant < debutMesureNanos) {
+                continue;
+            }
+            double limite = limiteur.limite();
+            sommeLimites += limite;
+            mesures++;
+            if (limite < limiteMinimale) {
+                limiteMinimale = limite;
+                retour = -1;
+            }
+            if (limite >= LIMITE_MAX * 0.9 && retour < 0) {
+                retour = maintenant - debutMesureNanos;
+            }
+        }
+        return new Bilan(limiteur.limite(), mesures == 0 ? 0 : sommeLimites / mesures, limiteMinimale, retour);
+    }
+
+    private static Appel reussite(String type, long debutNanos, long latenceNanos) {
+        return new Appel(type, debutNanos + latenceNanos, latenceNanos, false);
+    }
+
+    /**
+     * Latence à vide : routage court (médiane 300 ms), génération longue (médiane 1200 ms)
+     */
+    private static long latenceLogNormale(String type, SplittableRandom random) {
+        double mediane = type.equals(ChatModelLimite.TYPE_ROUTAGE) ? 300 : 1200;
+        double gaussienne = Math.sqrt(-2 * Math.log(1 - random.nextDouble()))
+                * Math.cos(2 * Math.PI * random.nextDouble());
+        return (long) (mediane * Math.exp(0.5 * gaussienne) * MILLIS);
+    }
+
+    private static boolean verifier(String scenario, Bilan bilan, boolean condition) {
+        System.out.printf("%-42s finale=%5.1f  moyenne=%5.1f  minimale=%5.1f  retour=%s  %s%n",
+                scenario, bilan.limiteFinale(), bilan.limiteMoyenne(), bilan.limiteMinimale(),
+                bilan.retourNanos() < 0 ? "-" : String.format("%.0f s", bilan.retourNanos() / 1e9),
+                condition ? "OK" : "ÉCHEC");
+        return condition;
+    }
+}